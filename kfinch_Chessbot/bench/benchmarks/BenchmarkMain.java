@@ -0,0 +1,28 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain.java
+ * Runs the benchmarks with JMH's GC profiler attached, so every result comes with its allocation
+ * rate (gc.alloc.rate.norm is bytes allocated per operation) alongside its throughput or time.
+ *
+ * Usage:
+ *   BenchmarkMain [regex]
+ * Only benchmarks whose names match the regex are run, ex. "BoardBenchmark.inCheck". Without one, all of them run.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : "benchmarks\\..*")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
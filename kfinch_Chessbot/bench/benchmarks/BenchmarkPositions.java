@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import chess_backend.Board;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * BenchmarkPositions.java
+ * The fixed set of positions every benchmark runs on, as a JMH state.
+ * Each benchmark is run once per position, so results can be compared phase by phase:
+ *   opening    - a Ruy Lopez after 3.Bb5, with all the pieces still on
+ *   middlegame - the well known "Kiwipete" perft position, crowded and full of tactics
+ *   endgame    - a rook and pawn ending with few pieces and a lot of open space
+ */
+@State(Scope.Thread)
+public class BenchmarkPositions {
+
+	public static final String OPENING = "r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3";
+	public static final String MIDDLEGAME = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+	public static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+
+	@Param({"opening", "middlegame", "endgame"})
+	public String position;
+
+	public Board board;
+
+	//every legal move from board, for the benchmarks that need a move to play
+	public Move[] moves;
+	private int nextMove;
+
+	//scratch space for the benchmarks that generate packed moves
+	public MoveList moveList = new MoveList(1);
+
+	@Setup(Level.Trial)
+	public void setup(){
+		board = new Board(fenOf(position));
+		List<Move> legalMoves = board.generateMoves();
+		moves = legalMoves.toArray(new Move[legalMoves.size()]);
+		nextMove = 0;
+	}
+
+	/** Cycles through the legal moves from board, so a benchmark doesn't just measure one lucky move. */
+	public Move nextMove(){
+		Move m = moves[nextMove];
+		nextMove = (nextMove + 1) % moves.length;
+		return m;
+	}
+
+	/** Returns the FEN for the named position. */
+	public static String fenOf(String position){
+		if(position.equals("opening"))
+			return OPENING;
+		if(position.equals("middlegame"))
+			return MIDDLEGAME;
+		if(position.equals("endgame"))
+			return ENDGAME;
+		throw new IllegalArgumentException("Unknown benchmark position: " + position);
+	}
+
+}
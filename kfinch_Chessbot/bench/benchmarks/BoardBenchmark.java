@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chess_backend.Board;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * BoardBenchmark.java
+ * Throughput of the Board operations the search leans on hardest: move generation,
+ * playing a move, and check detection. Both the boxed (List<Move>, afterMove) and the packed
+ * (MoveList, makeMove/unmakeMove) forms are measured, since the frontends still use the former.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	@Benchmark
+	public List<Move> generateMoves(BenchmarkPositions p){
+		return p.board.generateMoves();
+	}
+
+	@Benchmark
+	public int generateMovesPacked(BenchmarkPositions p){
+		p.board.generateMoves(p.moveList, 0);
+		return p.moveList.size(0);
+	}
+
+	@Benchmark
+	public Board afterMove(BenchmarkPositions p){
+		return p.board.afterMove(p.nextMove());
+	}
+
+	@Benchmark
+	public int makeUnmakeMove(BenchmarkPositions p){
+		MoveList moveList = p.moveList;
+		p.board.generateMoves(moveList, 0);
+		for(int i=0; i<moveList.size(0); i++){
+			p.board.makeMove(moveList.get(0, i));
+			p.board.unmakeMove();
+		}
+		return moveList.size(0);
+	}
+
+	@Benchmark
+	public boolean inCheck(BenchmarkPositions p){
+		return p.board.inCheck(p.board.getTurn());
+	}
+
+}
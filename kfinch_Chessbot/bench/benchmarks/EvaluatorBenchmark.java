@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chessbot.BasicEvaluator;
+import chessbot.Evaluator;
+import chessbot.IncrementalEvaluator;
+import chessbot.TaperedEvaluator;
+
+/**
+ * EvaluatorBenchmark.java
+ * Throughput of the static evaluation, which runs at every leaf of the search.
+ * IncrementalEvaluator and TaperedEvaluator read sums the board keeps up to date as moves are made, which it
+ * starts doing on their first call, so after warmup these measure just reading them off (and for TaperedEvaluator,
+ * probing its pawn hash table). Each benchmark gets its own positions, so the evaluators never share a board.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluatorBenchmark {
+
+	private Evaluator basic = new BasicEvaluator();
+	private Evaluator incremental = new IncrementalEvaluator();
+	private Evaluator tapered = new TaperedEvaluator();
+
+	@Benchmark
+	public int basicEvaluate(BenchmarkPositions p){
+		return basic.evaluate(p.board);
+	}
+
+	@Benchmark
+	public int incrementalEvaluate(BenchmarkPositions p){
+		return incremental.evaluate(p.board);
+	}
+
+	@Benchmark
+	public int taperedEvaluate(BenchmarkPositions p){
+		return tapered.evaluate(p.board);
+	}
+
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chess_backend.Move;
+import chessbot.IncrementalEvaluator;
+import chessbot.SearchEngine;
+import chessbot.SearchLimits;
+
+/**
+ * SearchBenchmark.java
+ * Time taken by a whole fixed depth search, which is what a player actually waits on.
+ * The engine is built once, but its transposition table is emptied before every call (outside the timing),
+ * as otherwise every call after the first would mostly replay the table's results for the same position.
+ * So this is the time for a search of a position the bot hasn't seen before, ex. right after the opponent's move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+	@Param({"4", "6"})
+	public int depth;
+
+	private SearchEngine engine;
+
+	@Setup(Level.Trial)
+	public void setup(){
+		engine = new SearchEngine(new IncrementalEvaluator());
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTable(){
+		engine.getTranspositionTable().clear();
+	}
+
+	@Benchmark
+	public Move searchFixed(BenchmarkPositions p){
+		return engine.search(p.board, new SearchLimits(depth));
+	}
+
+}
@@ -0,0 +1,277 @@
+package chess_backend;
+
+/**
+ * Bitboards.java
+ * Static helpers and precomputed attack tables for the bitboard half of Board.
+ *
+ * A bitboard is a long with one bit per square. Square indices run from a1 = 0 to h8 = 63,
+ * so the square at board[x][y] is bit (y*8 + x).
+ */
+public final class Bitboards {
+
+	public static final long FILE_A = 0x0101010101010101L;
+	public static final long FILE_H = FILE_A << 7;
+	public static final long RANK_1 = 0xFFL;
+	public static final long RANK_8 = RANK_1 << 56;
+
+	// Squares attacked by a knight / king standing on each square.
+	public static final long[] KNIGHT_ATTACKS = new long[64];
+	public static final long[] KING_ATTACKS = new long[64];
+
+	// Squares attacked by a pawn of the given color standing on each square. ex: PAWN_ATTACKS[WHITE][sq]
+	public static final long[][] PAWN_ATTACKS = new long[2][64];
+
+	// BETWEEN[a][b] is every square strictly between a and b if they share a rank, file or diagonal, otherwise empty.
+	// LINE[a][b] is the whole rank, file or diagonal through a and b (including both), otherwise empty.
+	public static final long[][] BETWEEN = new long[64][64];
+	public static final long[][] LINE = new long[64][64];
+
+	// Every square in a given direction from each square, not including the square itself.
+	// Directions are in the same order as Board.DIAGONAL_MOVES and Board.LINE_MOVES.
+	// Only used to build the magic tables below.
+	private static final long[][] DIAGONAL_RAYS = new long[4][64];
+	private static final long[][] LINE_RAYS = new long[4][64];
+
+	/* Magic bitboard tables for the sliding pieces.
+	 * The mask of a square is the set of squares whose occupancy can change that square's attacks
+	 * (its rays, minus the board edge the ray runs into). Multiplying the masked occupancy by the
+	 * square's magic number gathers those bits into the top of the long, and shifting them down gives
+	 * an index into that square's slice of the shared attack table. Each lookup is then one multiply,
+	 * one shift and one array read, however far the rays reach.
+	 *
+	 * The magic numbers themselves were found offline by trial and error with sparse random longs.
+	 * Searching for them at class-load works too, but takes a couple of seconds.
+	 */
+	private static final long[] BISHOP_MASKS = new long[64];
+	private static final int[] BISHOP_SHIFTS = new int[64];
+	private static final int[] BISHOP_OFFSETS = new int[64];
+	private static final long[] BISHOP_TABLE = new long[5248]; //the sum of 2^(bits in mask) over every square
+	private static final long[] BISHOP_MAGICS = {
+		0x2008021012002502L, 0x10601C0480810A01L, 0x200401140D010000L, 0x4011040480000000L,
+		0x4804050488000400L, 0x1201042006084000L, 0x0815142220040081L, 0x2480840088410804L,
+		0x0010502109010A00L, 0x00000404008C0104L, 0xC00250410A002000L, 0x0040144400830000L,
+		0x0000011040084000L, 0x1004010120900000L, 0x0409010410250408L, 0x0610520101411010L,
+		0xD940122008029080L, 0x0208020202040420L, 0x2090201200204100L, 0x0118440404000800L,
+		0x00830000904000C0L, 0x0100400888084004L, 0x0504020114020200L, 0x60902200440A0804L,
+		0x4102904141040800L, 0x5C90044002040400L, 0x0088040008083120L, 0x000108000C004010L,
+		0x0021004014004040L, 0x1000410022008200L, 0x2812020200411040L, 0x80004443048C0410L,
+		0x400A082004242080L, 0x8004862818503020L, 0x020C004400282020L, 0x00C2240102100900L,
+		0x0002080410020200L, 0x0010410040220041L, 0xA210040122A08091L, 0x3001410020020200L,
+		0x00C0922110806000L, 0x1A00808808346140L, 0x2092010406104304L, 0x0040404208000480L,
+		0x9480202008880100L, 0x2401301000840040L, 0x0060820409040040L, 0xA08408004902C044L,
+		0x0801040184400040L, 0x00C0220130080028L, 0x813A010241109040L, 0x9010060104980000L,
+		0x0000504105010000L, 0x1240082008009800L, 0x0011040800840844L, 0x0004300086009284L,
+		0x0008140221100802L, 0x0C00002121101004L, 0x0230248250443000L, 0x800010E208420200L,
+		0x800101C010020211L, 0x0201008404484200L, 0x0880202042062541L, 0x102204A804840080L
+	};
+
+	private static final long[] ROOK_MASKS = new long[64];
+	private static final int[] ROOK_SHIFTS = new int[64];
+	private static final int[] ROOK_OFFSETS = new int[64];
+	private static final long[] ROOK_TABLE = new long[102400];
+	private static final long[] ROOK_MAGICS = {
+		0x0080068051E04000L, 0x0040001000402000L, 0x0080100020008008L, 0x4E000A0010208440L,
+		0x4200040802002010L, 0x0100010008020400L, 0x9080608019000600L, 0x8100020080204100L,
+		0x8080800090204000L, 0x8015004004802100L, 0x000200108A002040L, 0x0801000821001000L,
+		0x0015000500080070L, 0x0120800400800200L, 0x0109000432001100L, 0x020080055B000080L,
+		0x0080004000402002L, 0x5260848020004008L, 0x2402020014402080L, 0x3000808010000802L,
+		0x0304018004810800L, 0x0000808004000200L, 0x0002040001500248L, 0x0012020000408401L,
+		0x8440008080004020L, 0x0804200840100040L, 0x0820008080201000L, 0x0021008B00201000L,
+		0x0081011100080084L, 0x1080020080800400L, 0x0081014400882210L, 0x20010001000D6082L,
+		0x1000804010800020L, 0x0020100020404000L, 0x0201002001001041L, 0x1181002109001000L,
+		0x0001000801001004L, 0x0000800200800400L, 0x2000388204000110L, 0x1222040082002041L,
+		0x6041C00081A48000L, 0x8020802201060040L, 0x4000200100410018L, 0x0010000904110020L,
+		0x8000040008008080L, 0x0A00201004080140L, 0x0000040200010100L, 0x0220007081020004L,
+		0x840205C981002A00L, 0x0000804000200480L, 0x0002081040802200L, 0x0240230010000900L,
+		0x0044800800240180L, 0x4011000400080300L, 0x00101011088A0C00L, 0x1003000080420100L,
+		0x0180102100408001L, 0x1100108040010021L, 0x0182004008108022L, 0x0122900128202501L,
+		0x0002012004100802L, 0x00C200834C081002L, 0x0440020110083084L, 0x4000484884010022L
+	};
+
+	static {
+		for(int sq=0; sq<64; sq++){
+			int x = fileOf(sq);
+			int y = rankOf(sq);
+			KNIGHT_ATTACKS[sq] = stepAttacks(x, y, Board.KNIGHT_MOVES);
+			KING_ATTACKS[sq] = stepAttacks(x, y, Board.DIAGONAL_MOVES) | stepAttacks(x, y, Board.LINE_MOVES);
+			PAWN_ATTACKS[Board.WHITE][sq] = stepAttacks(x, y, new int[] {1,1,-1,1});
+			PAWN_ATTACKS[Board.BLACK][sq] = stepAttacks(x, y, new int[] {1,-1,-1,-1});
+			for(int i=0; i<4; i++){
+				DIAGONAL_RAYS[i][sq] = rayOf(x, y, Board.DIAGONAL_MOVES[2*i], Board.DIAGONAL_MOVES[2*i+1]);
+				LINE_RAYS[i][sq] = rayOf(x, y, Board.LINE_MOVES[2*i], Board.LINE_MOVES[2*i+1]);
+			}
+		}
+
+		for(int sq=0; sq<64; sq++){
+			for(int i=0; i<8; i+=2){
+				fillLines(sq, Board.DIAGONAL_MOVES[i], Board.DIAGONAL_MOVES[i+1]);
+				fillLines(sq, Board.LINE_MOVES[i], Board.LINE_MOVES[i+1]);
+			}
+		}
+
+		int bishopOffset = 0, rookOffset = 0;
+		for(int sq=0; sq<64; sq++){
+			BISHOP_OFFSETS[sq] = bishopOffset;
+			BISHOP_MASKS[sq] = relevantOccupancy(sq, DIAGONAL_RAYS);
+			BISHOP_SHIFTS[sq] = 64 - count(BISHOP_MASKS[sq]);
+			fillMagicTable(sq, BISHOP_MASKS[sq], BISHOP_MAGICS[sq], DIAGONAL_RAYS, BISHOP_TABLE, bishopOffset);
+			bishopOffset += 1 << count(BISHOP_MASKS[sq]);
+
+			ROOK_OFFSETS[sq] = rookOffset;
+			ROOK_MASKS[sq] = relevantOccupancy(sq, LINE_RAYS);
+			ROOK_SHIFTS[sq] = 64 - count(ROOK_MASKS[sq]);
+			fillMagicTable(sq, ROOK_MASKS[sq], ROOK_MAGICS[sq], LINE_RAYS, ROOK_TABLE, rookOffset);
+			rookOffset += 1 << count(ROOK_MASKS[sq]);
+		}
+	}
+
+	private Bitboards(){}
+
+	/* Table building helper: every on-board square one step away in each of the given (dx,dy) pairs. */
+	private static long stepAttacks(int x, int y, int[] moves){
+		long result = 0;
+		for(int i=0; i<moves.length; i+=2){
+			int ex = x + moves[i];
+			int ey = y + moves[i+1];
+			if(((ex | ey) & 8) == 0) //same bounds check as Board uses
+				result |= bit(ex, ey);
+		}
+		return result;
+	}
+
+	/* Table building helper: every square from (x,y) to the edge of the board in direction (dx,dy). */
+	private static long rayOf(int x, int y, int dx, int dy){
+		long result = 0;
+		for(int ex = x+dx, ey = y+dy; ((ex | ey) & 8) == 0; ex += dx, ey += dy)
+			result |= bit(ex, ey);
+		return result;
+	}
+
+	/* Table building helper: fills in BETWEEN and LINE for sq and every square in direction (dx,dy) from it. */
+	private static void fillLines(int sq, int dx, int dy){
+		int x = fileOf(sq);
+		int y = rankOf(sq);
+		long line = rayOf(x, y, dx, dy) | rayOf(x, y, -dx, -dy) | (1L << sq);
+		long between = 0;
+		for(int ex = x+dx, ey = y+dy; ((ex | ey) & 8) == 0; ex += dx, ey += dy){
+			BETWEEN[sq][square(ex, ey)] = between;
+			LINE[sq][square(ex, ey)] = line;
+			between |= bit(ex, ey);
+		}
+	}
+
+	/** Returns the square index of (x,y). */
+	public static int square(int x, int y){
+		return (y << 3) | x;
+	}
+
+	/** Returns the x value (column) of a square index. */
+	public static int fileOf(int sq){
+		return sq & 7;
+	}
+
+	/** Returns the y value (row) of a square index. */
+	public static int rankOf(int sq){
+		return sq >>> 3;
+	}
+
+	/** Returns a bitboard with only (x,y) set. */
+	public static long bit(int x, int y){
+		return 1L << square(x, y);
+	}
+
+	/** Returns the index of the lowest set bit. Undefined for an empty bitboard. */
+	public static int lowestSquare(long bb){
+		return Long.numberOfTrailingZeros(bb);
+	}
+
+	/** Returns the number of set bits. */
+	public static int count(long bb){
+		return Long.bitCount(bb);
+	}
+
+	/**
+	 * Returns every square a bishop on sq attacks, given the occupied squares.
+	 * The first blocker in each direction is included, whichever color it is.
+	 */
+	public static long bishopAttacks(int sq, long occupied){
+		int index = (int) (((occupied & BISHOP_MASKS[sq]) * BISHOP_MAGICS[sq]) >>> BISHOP_SHIFTS[sq]);
+		return BISHOP_TABLE[BISHOP_OFFSETS[sq] + index];
+	}
+
+	/**
+	 * Returns every square a rook on sq attacks, given the occupied squares.
+	 * The first blocker in each direction is included, whichever color it is.
+	 */
+	public static long rookAttacks(int sq, long occupied){
+		int index = (int) (((occupied & ROOK_MASKS[sq]) * ROOK_MAGICS[sq]) >>> ROOK_SHIFTS[sq]);
+		return ROOK_TABLE[ROOK_OFFSETS[sq] + index];
+	}
+
+	/** Returns every square a queen on sq attacks, given the occupied squares. */
+	public static long queenAttacks(int sq, long occupied){
+		return bishopAttacks(sq, occupied) | rookAttacks(sq, occupied);
+	}
+
+	/* Table building helper: the squares along the rays from sq whose occupancy matters.
+	 * The last square of each ray is left out, as it is attacked whether or not something stands on it.
+	 */
+	private static long relevantOccupancy(int sq, long[][] rays){
+		long result = 0;
+		for(int i=0; i<4; i++){
+			long ray = rays[i][sq];
+			if(ray == 0)
+				continue;
+			if(Long.numberOfTrailingZeros(ray) > sq) //ray runs upwards, so its last square is its highest bit
+				result |= ray & ~Long.highestOneBit(ray);
+			else
+				result |= ray & (ray - 1);
+		}
+		return result;
+	}
+
+	/* Table building helper: fills in one square's slice of a magic attack table,
+	 * walking the rays once for every subset of the square's mask.
+	 * Colliding subsets are fine as long as they share the same attack set.
+	 */
+	private static void fillMagicTable(int sq, long mask, long magic, long[][] rays, long[] table, int offset){
+		int shift = 64 - count(mask);
+		boolean[] filled = new boolean[1 << count(mask)];
+		
+		//enumerates every subset of mask (the "carry-rippler" trick)
+		long occ = 0;
+		do{
+			int index = (int) ((occ * magic) >>> shift);
+			long attacks = slidingAttacks(sq, occ, rays);
+			if(filled[index] && table[offset + index] != attacks)
+				throw new IllegalStateException("Bad magic number for square " + sq);
+			filled[index] = true;
+			table[offset + index] = attacks;
+			occ = (occ - mask) & mask;
+		} while(occ != 0);
+	}
+
+	/* Table building helper: the slow way of finding slider attacks, used to fill the magic tables.
+	 * Walks each ray out to its first blocker and cuts off everything behind it.
+	 * If a ray runs towards higher square indices the nearest blocker is its lowest set bit,
+	 * otherwise it is its highest set bit.
+	 */
+	private static long slidingAttacks(int sq, long occupied, long[][] rays){
+		long result = 0;
+		for(int i=0; i<4; i++){
+			long ray = rays[i][sq];
+			long blockers = ray & occupied;
+			if(blockers != 0){
+				int first;
+				if(Long.numberOfTrailingZeros(ray) > sq) //ray runs upwards from sq
+					first = Long.numberOfTrailingZeros(blockers);
+				else
+					first = 63 - Long.numberOfLeadingZeros(blockers);
+				ray ^= rays[i][first];
+			}
+			result |= ray;
+		}
+		return result;
+	}
+
+}
@@ -1,6 +1,7 @@
 package chess_backend;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -15,6 +16,13 @@ public class Board {
 	// The board, and the pieces on it. Color and piece packed into byte.
 	private byte[][] board = new byte[8][8];
 
+	// The same pieces as bitboards (see Bitboards.java), kept in sync with board by modifySquare.
+	// pieceSets is indexed by the packed piece byte, so only twelve of its sixteen entries are used.
+	// ex: pieceSets[makeSquare(WHITE, KNIGHT)] has a bit set for every white knight.
+	private long[] pieceSets = new long[16];
+	private long[] colorSets = new long[2];
+	private long occupied;
+
 	// Marks the column of last turn's 2 space pawn push, or -1 if there wasn't one.
 	private int previousDoublePush;
 	
@@ -33,8 +41,41 @@ public class Board {
 	private int[] kingx = new int[2];
 	private int[] kingy = new int[2];
 	
-	// This object's hash value. Methods that modify this object's data should also update the hash properly.
-	private int hash;
+	// This object's 64 bit Zobrist key. Methods that modify this object's data should also update the key properly.
+	private long hash;
+	// A second key covering only the pawns, for caching evaluations of the pawn structure. Kept up to date by modifySquare.
+	private long pawnHash;
+
+	// Running sums of each player's piece values in tables, kept up to date by modifySquare (see PieceSquareTables.java).
+	private PieceSquareTables tables = PieceSquareTables.MATERIAL;
+	private int[] midgameScore = new int[2];
+	private int[] endgameScore = new int[2];
+	
+	// Check and pin information for the active player, worked out once per node by updateCheckInfo.
+	// Only meaningful during move generation, as making any move invalidates it.
+	private long checkers; //enemy pieces giving check
+	private long pinned; //the active player's pieces that can't leave the line between their king and an enemy slider
+	private long checkMask; //squares a non-king move must land on: anywhere, only ones that block or capture a lone checker, or none
+
+	/* Undo stack for unmakeMove(). Each makeMove pushes whatever can't be recomputed on the way back:
+	 * the move's squares and pieces, the castling/enpassant state, and the hash.
+	 * Allocated on the first makeMove and reused from then on, so a search that works on a single Board
+	 * does no allocation per node. Copies of a board start with an empty stack.
+	 */
+	private static final int UNDO_STACK_SIZE = 128; //initial depth, grows if a game runs longer than this
+	private int[] undoMove, undoState;
+	private long[] undoHash;
+	private int undoCount;
+	private static final int NULL_MOVE_UNDO = -1; //undoMove entry for a null move, which no real move can pack to
+	
+	// Scratch space for isLegalMove(int) and see(int), allocated on first use.
+	private MoveList squareMoves;
+	private int[] seeGains;
+	
+	// Rough piece values, indexed by piece type, for static exchange evaluation and for move ordering (see MoveOrdering.java),
+	// so the two always agree on what a capture wins. Never used for evaluation, which has its own values.
+	// The king is worth more than everything else put together, so trading it is never worth it.
+	public static final int[] PIECE_VALUES = {0, 100, 300, 300, 500, 900, 20000};
 
 	public static final byte EMPTY = 0; //empty squares will always be 0x00
 	public static final byte PAWN = 1;
@@ -51,17 +92,26 @@ public class Board {
 	public static final int[] DIAGONAL_MOVES = {1,1,1,-1,-1,1,-1,-1};
 	public static final int[] LINE_MOVES = {1,0,0,1,-1,0,0,-1};
 
-	/* Each piece in each position should have a different arbitrary int value in order
+	/* Each piece in each position should have a different arbitrary long value in order
 	 * to avoid hash collision. The value for each piece is xor'd together to form
-	 * the hash code. In addition, when it is black's turn, the hash value is xor'd with
-	 * 0xCCCCCCCC
+	 * the hash code, along with a value for the rest of the state (see stateKey()).
+	 * zobrist is indexed by square*16 + piece, and empty squares are all 0 so they can be skipped.
 	 */
-	private static int[] zobrist = new int[16 * 64];
+	private static long[] zobrist = new long[64 * 16];
+	private static long[] zobristCastling = new long[64]; //indexed by the castling flags, see stateKey()
+	private static long[] zobristEnpassant = new long[8]; //indexed by the column of the double push
+	private static long zobristBlack; //xor'd in when it is black's turn
 	
 	static {
 		Random r = new Random(1337); //what's the worst that could happen?
 		for (int i = 0; i < zobrist.length; i++)
-			zobrist[i] = r.nextInt();
+			if(!isEmpty((byte) (i & 15)))
+				zobrist[i] = r.nextLong();
+		for (int i = 0; i < zobristCastling.length; i++)
+			zobristCastling[i] = r.nextLong();
+		for (int i = 0; i < zobristEnpassant.length; i++)
+			zobristEnpassant[i] = r.nextLong();
+		zobristBlack = r.nextLong();
 	}
 
 	public static byte colorOf(byte x) { //returns the 'color' portion of a piece's byte packing
@@ -165,12 +215,7 @@ public class Board {
 		kingy[BLACK] = 7;
 
 		//zobrist hashing to allow implementation of transposition tables
-		hash = 0;
-		for(int x=0; x<8; x++) {
-			for(int y=0; y<8; y++) {
-				hash ^= zobrist[x*128 + y*16 + board[x][y]];
-			}
-		}
+		initFromBoard();
 	}
 
 	/** Creates a new board identical to b */
@@ -183,10 +228,21 @@ public class Board {
 		for(int x=0; x<8; x++)
 			for(int y=0; y<8; y++)
 				board[x][y] = b.board[x][y];
+		System.arraycopy(b.pieceSets, 0, pieceSets, 0, pieceSets.length);
+		colorSets[WHITE] = b.colorSets[WHITE];
+		colorSets[BLACK] = b.colorSets[BLACK];
+		occupied = b.occupied;
 
 		previousDoublePush = b.previousDoublePush;
 		turn = b.turn;
 		hash = b.hash;
+		pawnHash = b.pawnHash;
+		tables = b.tables;
+		midgameScore[WHITE] = b.midgameScore[WHITE];
+		midgameScore[BLACK] = b.midgameScore[BLACK];
+		endgameScore[WHITE] = b.endgameScore[WHITE];
+		endgameScore[BLACK] = b.endgameScore[BLACK];
+		undoCount = 0;
 		for(int i=0; i<2; i++){
 			kingsideCastle[i] = b.kingsideCastle[i];
 			queensideCastle[i] = b.queensideCastle[i];
@@ -209,12 +265,145 @@ public class Board {
 		this.hasCastled = hasCastled;
 		this.kingx = kingx;
 		this.kingy = kingy;
+		initFromBoard();
+	}
+	
+	/**
+	 * Creates a new board from a position in Forsyth-Edwards Notation, for example
+	 * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1".
+	 * The two move counters at the end are optional and ignored. Neither player is marked as having castled.
+	 * Throws IllegalArgumentException if the position can't be read or doesn't have exactly one king per side.
+	 * Beyond that, does not check for state legality.
+	 */
+	public Board(String fen){
+		String[] fields = fen.trim().split("\\s+");
+		if(fields.length < 4)
+			throw new IllegalArgumentException("FEN needs at least 4 fields: " + fen);
+		
+		int kings = 0;
+		String[] rows = fields[0].split("/");
+		if(rows.length != 8)
+			throw new IllegalArgumentException("FEN needs 8 rows: " + fen);
+		for(int i=0; i<8; i++){
+			int y = 7 - i; //FEN lists the rows from black's side down
+			int x = 0;
+			for(char ch : rows[i].toCharArray()){
+				if(ch >= '1' && ch <= '8'){
+					x += ch - '0';
+					continue;
+				}
+				byte piece = pieceFromChar(ch);
+				if(piece == EMPTY || x > 7)
+					throw new IllegalArgumentException("Bad FEN row '" + rows[i] + "': " + fen);
+				board[x][y] = piece;
+				if(pieceOf(piece) == KING){
+					kingx[colorOf(piece)] = x;
+					kingy[colorOf(piece)] = y;
+					kings += (colorOf(piece) == WHITE) ? 1 : 16;
+				}
+				x++;
+			}
+			if(x != 8)
+				throw new IllegalArgumentException("Bad FEN row '" + rows[i] + "': " + fen);
+		}
+		if(kings != 17)
+			throw new IllegalArgumentException("FEN needs one king per side: " + fen);
+		
+		if(fields[1].equals("w"))
+			turn = WHITE;
+		else if(fields[1].equals("b"))
+			turn = BLACK;
+		else
+			throw new IllegalArgumentException("Bad FEN side to move: " + fen);
+		
+		kingsideCastle[WHITE] = fields[2].indexOf('K') != -1;
+		queensideCastle[WHITE] = fields[2].indexOf('Q') != -1;
+		kingsideCastle[BLACK] = fields[2].indexOf('k') != -1;
+		queensideCastle[BLACK] = fields[2].indexOf('q') != -1;
+		
+		if(fields[3].equals("-"))
+			previousDoublePush = -1;
+		else{
+			Coordinate c = notationToCoord(fields[3]);
+			if(c == null)
+				throw new IllegalArgumentException("Bad FEN enpassant square: " + fen);
+			previousDoublePush = c.x;
+		}
+		
+		initFromBoard();
+	}
+	
+	/* FEN helper. Converts a FEN piece letter (uppercase = White) into its byte packing, or EMPTY if it isn't one. */
+	private static byte pieceFromChar(char ch){
+		byte color = Character.isUpperCase(ch) ? WHITE : BLACK;
+		switch(Character.toLowerCase(ch)){
+		case 'p' : return makeSquare(color, PAWN);
+		case 'n' : return makeSquare(color, KNIGHT);
+		case 'b' : return makeSquare(color, BISHOP);
+		case 'r' : return makeSquare(color, ROOK);
+		case 'q' : return makeSquare(color, QUEEN);
+		case 'k' : return makeSquare(color, KING);
+		}
+		return EMPTY;
+	}
+	
+	/* Constructor helper. Builds the hash and the bitboards from scratch out of the contents of board. */
+	private void initFromBoard(){
 		hash = 0;
+		pawnHash = 0;
+		occupied = 0;
+		for(int i=0; i<pieceSets.length; i++)
+			pieceSets[i] = 0;
+		colorSets[WHITE] = 0;
+		colorSets[BLACK] = 0;
 		for(int x=0; x<8; x++){
 			for(int y=0; y<8; y++){
-				hash ^= zobrist[x*128 + y*16 + board[x][y]];
+				hash ^= zobrist[Bitboards.square(x, y)*16 + board[x][y]];
+				if(isEmpty(board[x][y]))
+					continue;
+				if(pieceOf(board[x][y]) == PAWN)
+					pawnHash ^= zobrist[Bitboards.square(x, y)*16 + board[x][y]];
+				long bit = Bitboards.bit(x, y);
+				pieceSets[board[x][y]] |= bit;
+				colorSets[colorOf(board[x][y])] |= bit;
+				occupied |= bit;
 			}
 		}
+		hash ^= stateKey();
+		sumTables();
+	}
+	
+	/* Adds up each player's piece values in tables from scratch. */
+	private void sumTables(){
+		for(int c=0; c<2; c++){
+			midgameScore[c] = 0;
+			endgameScore[c] = 0;
+		}
+		for(int sq=0; sq<64; sq++){
+			byte piece = board[Bitboards.fileOf(sq)][Bitboards.rankOf(sq)];
+			if(isEmpty(piece))
+				continue;
+			midgameScore[colorOf(piece)] += tables.midgame[piece*64 + sq];
+			endgameScore[colorOf(piece)] += tables.endgame[piece*64 + sq];
+		}
+	}
+	
+	/* Hash helper. Returns the part of the Zobrist key that covers everything but the pieces:
+	 * castling rights, whether each player has castled, the enpassant column and whose turn it is.
+	 */
+	private long stateKey(){
+		int castling = 0;
+		for(int c=0; c<2; c++){
+			if(kingsideCastle[c])  castling |= 1 << (3*c);
+			if(queensideCastle[c]) castling |= 2 << (3*c);
+			if(hasCastled[c])      castling |= 4 << (3*c);
+		}
+		long key = zobristCastling[castling];
+		if(previousDoublePush != -1)
+			key ^= zobristEnpassant[previousDoublePush];
+		if(turn == BLACK)
+			key ^= zobristBlack;
+		return key;
 	}
 	
 	/**
@@ -244,6 +433,78 @@ public class Board {
 		return board[x][y];
 	}
 	
+	/**
+	 * Getter method for the bitboard of one kind of piece.
+	 * @param color The color of the pieces.
+	 * @param piece The type of the pieces.
+	 * @return A bitboard with a bit set for every square holding that piece. (see Bitboards.java)
+	 */
+	public long getPieceSet(byte color, byte piece){
+		return pieceSets[makeSquare(color, piece)];
+	}
+	
+	/**
+	 * Switches the piece values this board keeps running sums of, adding them up from scratch once,
+	 * after which every move keeps them up to date for next to nothing. Copies of the board keep the same tables.
+	 */
+	public void setPieceSquareTables(PieceSquareTables tables){
+		this.tables = tables;
+		sumTables();
+	}
+	
+	/**
+	 * Makes sure this board keeps running sums of the given tables, switching to them only if it isn't already.
+	 * For evaluators that read their scores off the board, which call this on every board they're given,
+	 * so evaluating a board can change its tables. The switch costs a sum from scratch, so a board shouldn't be
+	 * evaluated by evaluators with different tables in turn: each would undo the other's switch every time.
+	 * A search never runs into this, as it searches on its own copy with a single evaluator.
+	 */
+	public void usePieceSquareTables(PieceSquareTables tables){
+		if(this.tables != tables)
+			setPieceSquareTables(tables);
+	}
+	
+	/** Returns the piece values this board keeps running sums of. */
+	public PieceSquareTables getPieceSquareTables(){
+		return tables;
+	}
+	
+	/** Returns the sum of the midgame values of the given player's pieces, see setPieceSquareTables. */
+	public int getMidgameScore(byte color){
+		return midgameScore[color];
+	}
+	
+	/** Returns the sum of the endgame values of the given player's pieces, see setPieceSquareTables. */
+	public int getEndgameScore(byte color){
+		return endgameScore[color];
+	}
+	
+	/**
+	 * Getter method for the bitboard of one player's pieces.
+	 * @param color Which player's pieces we're getting.
+	 * @return A bitboard with a bit set for every square holding one of that player's pieces.
+	 */
+	public long getColorSet(byte color){
+		return colorSets[color];
+	}
+	
+	/**
+	 * Checks whether a player has anything besides pawns and their king.
+	 * @param color Which player's pieces we're checking.
+	 * @return True iff the player has at least one knight, bishop, rook or queen.
+	 */
+	public boolean hasNonPawnMaterial(byte color){
+		return (colorSets[color] & ~pieceSets[makeSquare(color, PAWN)] & ~pieceSets[makeSquare(color, KING)]) != 0;
+	}
+	
+	/**
+	 * Getter method for the bitboard of every piece on the board.
+	 * @return A bitboard with a bit set for every non-empty square.
+	 */
+	public long getOccupied(){
+		return occupied;
+	}
+	
 	/**
 	 * Getter method for previousDoublePush.
 	 * @return The column of last turn's double pawn push (indexed from 0), or -1 if there wasn't one.
@@ -312,103 +573,288 @@ public class Board {
 			return true;
 		return false;
 	}
+	
+	/**
+	 * Returns true iff the packed move is a legal move for this board, flags and all.
+	 * Only generates the moves of the one piece on the move's start square, so it's cheap enough for a search
+	 * to vet a move it got from somewhere other than this board (ex. a transposition table or another position).
+	 */
+	public boolean isLegalMove(int move){
+		int from = Move.fromSquare(move);
+		if((colorSets[turn] & (1L << from)) == 0) //has to move one of the active player's pieces
+			return false;
+		if(squareMoves == null)
+			squareMoves = new MoveList(1);
+		generateSquareMoves(squareMoves, 0, from);
+		return squareMoves.contains(0, move);
+	}
 
 	/* Helper method that handles keeping the hash value correct when the board state is modified.
-	 * Replaces whatever is at board[x][y] with piece.
+	 * Replaces whatever is at board[x][y] with piece. Also keeps the bitboards and the table sums up to date.
 	 */
 	private void modifySquare(int x, int y, byte piece){
-		hash ^= zobrist[x*128 + y*16 + board[x][y]];
+		long bit = Bitboards.bit(x, y);
+		byte old = board[x][y];
+		int sq = Bitboards.square(x, y);
+		if(!isEmpty(old)){
+			pieceSets[old] ^= bit;
+			colorSets[colorOf(old)] ^= bit;
+			occupied ^= bit;
+			midgameScore[colorOf(old)] -= tables.midgame[old*64 + sq];
+			endgameScore[colorOf(old)] -= tables.endgame[old*64 + sq];
+			if(pieceOf(old) == PAWN)
+				pawnHash ^= zobrist[sq*16 + old];
+		}
+		if(!isEmpty(piece)){
+			pieceSets[piece] ^= bit;
+			colorSets[colorOf(piece)] ^= bit;
+			occupied ^= bit;
+			midgameScore[colorOf(piece)] += tables.midgame[piece*64 + sq];
+			endgameScore[colorOf(piece)] += tables.endgame[piece*64 + sq];
+			if(pieceOf(piece) == PAWN)
+				pawnHash ^= zobrist[sq*16 + piece];
+		}
+		hash ^= zobrist[sq*16 + old] ^ zobrist[sq*16 + piece];
 		board[x][y] = piece;
-		hash ^= zobrist[x*128 + y*16 + board[x][y]];
 	}
 	
 	/** Applies Move m to this Board while modifying the hash appropriately.
 	 * Does NOT check for move legality. */
+	public void makeMove(Move m) {
+		makeMove(packMove(m));
+	}
+	
+	/**
+	 * Converts a Move into the packed form used by makeMove(int) and the search. (see Move.java)
+	 * The packed form carries flags for the special moves, so it's worked out against this board's state.
+	 * Does NOT check for move legality.
+	 */
 	/* Weirdness involving handling pawns moving off the edges of the board are to handle knight promotes.
 	 * In short, ordering a pawn off the back edge of a board is equivalent to ordering it to the back row,
 	 * but asking for a Knight promote rather than a Queen promote.
 	 */
-	public void makeMove(Move m) {
-		previousDoublePush = -1; //will be set again if this move actually is a double push
+	public int packMove(Move m) {
+		int ey = Math.max(0, Math.min(7, m.ey));
 		byte piece = board[m.sx][m.sy];
-		modifySquare(m.sx, m.sy, EMPTY);
+		byte promotion = EMPTY;
+		int flags = 0;
+		if(!isEmpty(board[m.ex][ey]))
+			flags |= Move.CAPTURE;
+		if(pieceOf(piece) == PAWN){
+			if(m.ey >= 7 || m.ey <= 0) //it's a promotion move
+				promotion = (m.ey == 8 || m.ey == -1) ? KNIGHT : QUEEN;
+			else if(m.sx != m.ex && isEmpty(board[m.ex][m.ey])) //it's an enpassant
+				flags |= Move.CAPTURE | Move.ENPASSANT;
+			else if(Math.abs(m.sy - m.ey) == 2) //it's a double push
+				flags |= Move.DOUBLE_PUSH;
+		}
+		else if(pieceOf(piece) == KING && Math.abs(m.sx - m.ex) == 2) //it's a castle
+			flags |= Move.CASTLE;
+		return Move.pack(Bitboards.square(m.sx, m.sy), Bitboards.square(m.ex, ey), promotion, flags);
+	}
+	
+	/** Applies a packed move to this Board while modifying the hash appropriately.
+	 * Does NOT check for move legality. */
+	public void makeMove(int move) {
+		int from = Move.fromSquare(move);
+		int to = Move.toSquare(move);
+		int sx = Bitboards.fileOf(from), sy = Bitboards.rankOf(from);
+		int ex = Bitboards.fileOf(to), ey = Bitboards.rankOf(to);
+		byte piece = board[sx][sy];
+		int capturedY = ((move & Move.ENPASSANT) != 0) ? sy : ey; //an enpassant captures beside the start square
+		pushUndo(from, to, Bitboards.square(ex, capturedY), piece, board[ex][capturedY]);
+		hash ^= stateKey(); //takes the old castling/enpassant/turn out of the key, the new ones go in at the end
+		
+		previousDoublePush = -1; //will be set again if this move actually is a double push
 		
 		/* Handles marking castling as impossible when rooks move or are captured.
 		 * If a move either starts or ends at a rook starting position, it means the rook that started
 		 * there either moved or was captured, both of which invalidate castling with that rook.
-		 * The code checks if the ending y is <= 0 or >= 7 to handle the (rare) case of capturing a rook
-		 * with a knight promoting pawn. 
 		 */
-		if     ((m.sx == 0 && m.sy == 0) || (m.ex == 0 && m.ey <= 0))
-			queensideCastle[WHITE] = false;
-		else if((m.sx == 7 && m.sy == 0) || (m.ex == 7 && m.ey <= 0))
-			kingsideCastle[WHITE] = false;
-		else if((m.sx == 0 && m.sy == 7) || (m.ex == 0 && m.ey >= 7))
-			queensideCastle[BLACK] = false;
-		else if((m.sx == 7 && m.sy == 7) || (m.ex == 7 && m.ey >= 7))
-			kingsideCastle[BLACK] = false;
+		clearCastlingAt(sx, sy);
+		clearCastlingAt(ex, ey);
+		
+		if((move & Move.ENPASSANT) != 0)
+			modifySquare(ex, sy, EMPTY); //this is where the piece is captured
+		modifySquare(sx, sy, EMPTY);
+		byte promotion = Move.promotionOf(move);
+		if(promotion != EMPTY)
+			modifySquare(ex, ey, makeSquare(turn, promotion));
+		else
+			modifySquare(ex, ey, piece);
+		
+		if((move & Move.DOUBLE_PUSH) != 0)
+			previousDoublePush = sx;
 		
-		/* Handles the special pawn moves: promotion, enpassant, and double push */
-		if(pieceOf(piece) == PAWN){
-			if(m.ey >= 7 || m.ey <= 0){ //it's a promotion move
-				if(m.ey == 8){ //white is doing a knight promote
-					modifySquare(m.ex, 7, makeSquare(turn, KNIGHT));
-				}
-				else if(m.ey == -1){ //black is doing a knight promote
-					modifySquare(m.ex, 0, makeSquare(turn, KNIGHT));
-				}
-				else{ //it's a queen promote
-					modifySquare(m.ex, m.ey, makeSquare(turn, QUEEN));
-				}
-			}
-			else if(m.sx != m.ex && isEmpty(board[m.ex][m.ey])){ //it's an enpassant
-				modifySquare(m.ex, m.ey, piece);
-				modifySquare(m.ex, m.sy, EMPTY); //this is where the piece is captured
-			}
-			else if(Math.abs(m.sy - m.ey) == 2){ //it's a double push
-				previousDoublePush = m.sx;
-				modifySquare(m.ex, m.ey, piece);
-			}
-			else{ //it's a single push
-				modifySquare(m.ex, m.ey, piece);
-			}
-		}
-
 		/* Handles castling and manipulation of kingx and kingy */
-		else if(pieceOf(piece) == KING){
-			kingx[turn] = m.ex;
-			kingy[turn] = m.ey;
+		if(pieceOf(piece) == KING){
+			kingx[turn] = ex;
+			kingy[turn] = ey;
 			kingsideCastle[turn] = false; //you can no longer castle on either side after moving the king
 			queensideCastle[turn] = false;
-
-			if((m.ex - m.sx) == 2){ //it's a kingside castle
-				modifySquare(m.ex, m.ey, piece); //moves the king
-				modifySquare(5, m.ey, board[7][m.ey]); //moves the rook
-				modifySquare(7, m.ey, EMPTY);
+			if((move & Move.CASTLE) != 0){
+				if(ex == 6){ //it's a kingside castle, moves the rook
+					modifySquare(5, ey, board[7][ey]);
+					modifySquare(7, ey, EMPTY);
+				}
+				else{ //it's a queenside castle
+					modifySquare(3, ey, board[0][ey]);
+					modifySquare(0, ey, EMPTY);
+				}
 				hasCastled[turn] = true;
 			}
-			else if((m.sx - m.ex) == 2){ //it's a queenside castle
-				modifySquare(m.ex, m.ey, piece); //moves the king
-				modifySquare(3, m.ey, board[0][m.ey]); //moves the rook
-				modifySquare(0, m.ey, EMPTY);
-				hasCastled[turn] = true;
+		}
+		
+		turn = (byte) (1 - turn); //move is complete, it's now the other player's turn
+		hash ^= stateKey();
+	}
+	
+	/* makeMove helper. If (x,y) is a rook's starting square, castling with that rook is no longer possible. */
+	private void clearCastlingAt(int x, int y){
+		if(y == 0 || y == 7){
+			byte player = (y == 0) ? WHITE : BLACK;
+			if(x == 0)
+				queensideCastle[player] = false;
+			else if(x == 7)
+				kingsideCastle[player] = false;
+		}
+	}
+	
+	/**
+	 * Allocates the undo stack, with room for at least the given number of moves, and the scratch space
+	 * for isLegalMove(int) and see(int) now rather than on first use. A board that never has more moves made on it
+	 * than that then never allocates anything again, ex. the one a search works on.
+	 */
+	public void reserveScratch(int moves){
+		if(undoMove == null || undoMove.length < moves){
+			int size = Math.max(moves, UNDO_STACK_SIZE);
+			undoMove = (undoMove == null) ? new int[size] : Arrays.copyOf(undoMove, size);
+			undoState = (undoState == null) ? new int[size] : Arrays.copyOf(undoState, size);
+			undoHash = (undoHash == null) ? new long[size] : Arrays.copyOf(undoHash, size);
+		}
+		if(squareMoves == null)
+			squareMoves = new MoveList(1);
+		if(seeGains == null)
+			seeGains = new int[33];
+	}
+	
+	/** Returns the number of bytes taken up by the board's undo stack and scratch space, as allocated so far. */
+	public long getScratchSizeBytes(){
+		long bytes = 0;
+		if(undoMove != null)
+			bytes += undoMove.length * 16L; //an int, an int and a long per move
+		if(squareMoves != null)
+			bytes += squareMoves.getSizeBytes();
+		if(seeGains != null)
+			bytes += seeGains.length * 4L;
+		return bytes;
+	}
+	
+	/* makeMove helper. Records everything unmakeMove needs to take a move back again.
+	 * undoMove packs the start and end squares, the moved piece, the captured piece and where it was captured.
+	 * undoState packs the castling flags and previousDoublePush.
+	 */
+	private void pushUndo(int from, int to, int capturedSq, byte piece, byte captured){
+		if(undoMove == null){
+			undoMove = new int[UNDO_STACK_SIZE];
+			undoState = new int[UNDO_STACK_SIZE];
+			undoHash = new long[UNDO_STACK_SIZE];
+		}
+		else if(undoCount == undoMove.length){
+			undoMove = Arrays.copyOf(undoMove, undoCount * 2);
+			undoState = Arrays.copyOf(undoState, undoCount * 2);
+			undoHash = Arrays.copyOf(undoHash, undoCount * 2);
+		}
+		
+		undoMove[undoCount] = from | (to << 6) | (capturedSq << 12) | (piece << 18) | (captured << 22);
+		int state = (previousDoublePush + 1); //0 to 8, so 4 bits
+		for(int c=0; c<2; c++){
+			if(kingsideCastle[c])  state |= 1 << (4 + 3*c);
+			if(queensideCastle[c]) state |= 2 << (4 + 3*c);
+			if(hasCastled[c])      state |= 4 << (4 + 3*c);
+		}
+		undoState[undoCount] = state;
+		undoHash[undoCount] = hash;
+		undoCount++;
+	}
+	
+	/**
+	 * Takes back the most recent move made on this Board with makeMove, restoring the exact previous state.
+	 * Throws IllegalStateException if there is no move to take back.
+	 * Note that a copy of a board can't take back moves made before it was copied.
+	 */
+	public void unmakeMove(){
+		if(undoCount == 0 || undoMove[undoCount-1] == NULL_MOVE_UNDO)
+			throw new IllegalStateException("No move to unmake");
+		undoCount--;
+		int packed = undoMove[undoCount];
+		int from = packed & 63;
+		int to = (packed >>> 6) & 63;
+		int capturedSq = (packed >>> 12) & 63;
+		byte piece = (byte) ((packed >>> 18) & 15);
+		byte captured = (byte) ((packed >>> 22) & 15);
+		int fromX = Bitboards.fileOf(from), fromY = Bitboards.rankOf(from);
+		int toX = Bitboards.fileOf(to), toY = Bitboards.rankOf(to);
+		
+		turn = (byte) (1 - turn);
+		modifySquare(toX, toY, EMPTY);
+		modifySquare(Bitboards.fileOf(capturedSq), Bitboards.rankOf(capturedSq), captured);
+		modifySquare(fromX, fromY, piece);
+		
+		if(pieceOf(piece) == KING){
+			kingx[turn] = fromX;
+			kingy[turn] = fromY;
+			if(toX - fromX == 2){ //it was a kingside castle, put the rook back
+				modifySquare(7, toY, board[5][toY]);
+				modifySquare(5, toY, EMPTY);
 			}
-			else{ //it's a regular king move
-				modifySquare(m.ex, m.ey, piece);
+			else if(fromX - toX == 2){ //it was a queenside castle
+				modifySquare(0, toY, board[3][toY]);
+				modifySquare(3, toY, EMPTY);
 			}
 		}
-
-		/* It's a regular 'ole move! */
-		else{
-			modifySquare(m.ex, m.ey, piece);
-		}
 		
-		turn = (byte) (1 - turn); //move is complete, it's now the other player's turn
-		hash ^= 0xCCCCCCCC;
+		int state = undoState[undoCount];
+		previousDoublePush = (state & 15) - 1;
+		for(int c=0; c<2; c++){
+			kingsideCastle[c]  = (state & (1 << (4 + 3*c))) != 0;
+			queensideCastle[c] = (state & (2 << (4 + 3*c))) != 0;
+			hasCastled[c]      = (state & (4 << (4 + 3*c))) != 0;
+		}
+		hash = undoHash[undoCount]; //modifySquare kept the piece part right, but this also restores the rest of the state
+	}
+	
+	/**
+	 * Makes a 'null move': the active player passes, and it becomes the other player's turn with nothing else changed
+	 * (except that enpassant is no longer possible). Passing isn't legal chess, but a search can use it to ask
+	 * 'is this position so good that even doing nothing keeps it good?' Take it back with unmakeNullMove.
+	 * Does NOT check that the active player isn't in check, which would leave the king capturable.
+	 */
+	public void makeNullMove(){
+		pushUndo(0, 0, 0, EMPTY, EMPTY);
+		undoMove[undoCount-1] = NULL_MOVE_UNDO;
+		hash ^= stateKey();
+		previousDoublePush = -1;
+		turn = (byte) (1 - turn);
+		hash ^= stateKey();
+	}
+	
+	/**
+	 * Takes back a null move made with makeNullMove.
+	 * Throws IllegalStateException if the most recent move wasn't a null move.
+	 */
+	public void unmakeNullMove(){
+		if(undoCount == 0 || undoMove[undoCount-1] != NULL_MOVE_UNDO)
+			throw new IllegalStateException("No null move to unmake");
+		undoCount--;
+		turn = (byte) (1 - turn);
+		previousDoublePush = (undoState[undoCount] & 15) - 1;
+		hash = undoHash[undoCount];
 	}
 	
 	/**
 	 * Returns a Board representing the result of Move m being applied to this board.
+	 * Allocates a whole new Board, so searches should prefer makeMove and unmakeMove.
 	 */
 	public Board afterMove(Move m){
 		Board nb = new Board(this);
@@ -418,64 +864,150 @@ public class Board {
 	
 	/** Returns true iff player is in check. */
 	public boolean inCheck(byte player) {
-		int mkx = kingx[player];
-		int mky = kingy[player];
-		int x, y;
-
-		//first check all ranks, files, and diagonals for threats
-		for(int dx=-1; dx<2; dx++){
-			for(int dy=-1; dy<2; dy++){
-				if(dx == 0 && dy == 0)
-					continue;
-				boolean first = true;
-				// "((x | y) & 8) == 0" is a silly but very fast and compact bounds check
-				for(x = mkx+dx, y = mky+dy; ((x | y) & 8) == 0; x += dx, y += dy){
-					if(board[x][y] == EMPTY){
-						first = false; //we're no longer one away
-						continue;
-					}
-					if (colorOf(board[x][y]) == player)
-						break; //can't be put in check by your own pieces
-					switch(pieceOf(board[x][y])){
-					case QUEEN:
-						return true;
-					case BISHOP:
-						if((dx != 0) && (dy != 0)) //bishop can't threaten down ranks and files
-							return true;
-						break;
-					case ROOK:
-						if((dx == 0) || (dy == 0)) //rooks can't threaten down diagonals
-							return true;
-						break;
-					case KING:
-						if(first) //kings only threaten from distance one
-							return true;
-						break;
-					case PAWN:
-						if(first && (dx != 0)){ //pawns only threaten from the correct distance one diagonal
-							if(player == WHITE && (dy == 1))
-								return true;
-							else if(player == BLACK && (dy == -1))
-								return true;
-						}
-						break;
-					case KNIGHT: //can block checks. Checks by a knight must be looked at separately
-						break;
-					}
-					break; //if this line is hit, something has gone wrong TODO: add more useful error handling?
-				}
-			}
+		int kingSquare = Bitboards.square(kingx[player], kingy[player]);
+		return attackersOf(kingSquare, occupied, (byte) (1 - player)) != 0;
+	}
+	
+	/**
+	 * Static exchange evaluation: returns the material the active player wins (or loses, if negative)
+	 * by playing the packed move and then letting both sides keep capturing on its end square,
+	 * each with their least valuable piece, for as long as doing so is worthwhile.
+	 * Either side can stop capturing whenever carrying on would cost them.
+	 * Works purely on attack sets, so the board itself is never touched.
+	 * Sliders lined up behind a piece that captures (x-rays) join in once it has moved out of their way.
+	 * Pins and checks are ignored, except that a king never captures onto a square the other side still attacks.
+	 * A quiet move counts too: it scores how much is lost if the piece can be taken where it lands.
+	 */
+	public int see(int move){
+		if(seeGains == null)
+			seeGains = new int[33]; //at most 32 captures, as there are only 32 pieces
+		int[] gain = seeGains;
+		int from = Move.fromSquare(move);
+		int to = Move.toSquare(move);
+		long occ = occupied ^ (1L << from);
+		
+		byte promotion = Move.promotionOf(move);
+		int onSquare = PIECE_VALUES[pieceOf(board[Bitboards.fileOf(from)][Bitboards.rankOf(from)])]; //value of whatever now stands on 'to'
+		if((move & Move.ENPASSANT) != 0){
+			gain[0] = PIECE_VALUES[PAWN];
+			occ ^= 1L << (to + ((turn == WHITE) ? -8 : 8)); //the captured pawn sits beside the start square
+		}
+		else
+			gain[0] = PIECE_VALUES[pieceOf(board[Bitboards.fileOf(to)][Bitboards.rankOf(to)])];
+		if(promotion != EMPTY){
+			gain[0] += PIECE_VALUES[promotion] - PIECE_VALUES[PAWN];
+			onSquare = PIECE_VALUES[promotion];
 		}
 		
-		//checks for knight checks in the eight possible directions
-		for(int i=0; i<KNIGHT_MOVES.length; i+=2){
-			x = mkx + KNIGHT_MOVES[i];
-			y = mky + KNIGHT_MOVES[i+1];
-			if(((x | y) & 8) == 0 && pieceOf(board[x][y]) == KNIGHT && colorOf(board[x][y]) != player)
-				return true;
+		long diagonal = pieceSets[WHITE << 3 | BISHOP] | pieceSets[WHITE << 3 | QUEEN]
+					  | pieceSets[BLACK << 3 | BISHOP] | pieceSets[BLACK << 3 | QUEEN];
+		long line = pieceSets[WHITE << 3 | ROOK] | pieceSets[WHITE << 3 | QUEEN]
+				  | pieceSets[BLACK << 3 | ROOK] | pieceSets[BLACK << 3 | QUEEN];
+		long attackers = (attackersOf(to, occ, WHITE) | attackersOf(to, occ, BLACK)) & occ;
+		byte side = (byte) (1 - turn);
+		int d = 0;
+		while(true){
+			d++;
+			gain[d] = onSquare - gain[d-1]; //what 'side' is up if it can take and the exchange stops there
+			if(Math.max(-gain[d-1], gain[d]) < 0)
+				break; //whether or not 'side' can take, it can't change who comes out ahead
+			long ours = attackers & colorSets[side];
+			if(ours == 0)
+				break;
+			//finds the least valuable piece that can take
+			byte piece = PAWN;
+			long set = 0;
+			for(; piece <= KING; piece++){
+				set = ours & pieceSets[(side << 3) | piece];
+				if(set != 0)
+					break;
+			}
+			if(piece == KING && (attackers & colorSets[1 - side]) != 0)
+				break; //the king can't take into check
+			
+			onSquare = PIECE_VALUES[piece];
+			occ ^= set & -set;
+			//x-rays: moving the piece that took may have uncovered a slider behind it
+			attackers |= (Bitboards.bishopAttacks(to, occ) & diagonal) | (Bitboards.rookAttacks(to, occ) & line);
+			attackers &= occ;
+			side = (byte) (1 - side);
 		}
+		//the last entry is only what would happen if the exchange went on, which it didn't.
+		//works backwards from there, letting each side choose between taking and stopping
+		while(--d > 0)
+			gain[d-1] = -Math.max(-gain[d-1], gain[d]);
+		return gain[0];
+	}
+	
+	/* Returns a bitboard of every piece of the given color that attacks sq,
+	 * pretending the occupied squares are 'occ' rather than the real occupancy.
+	 * Pawns are found by looking 'backwards' with the other color's pawn attacks.
+	 */
+	private long attackersOf(int sq, long occ, byte color) {
+		int c = color << 3;
+		long diagonal = pieceSets[c | BISHOP] | pieceSets[c | QUEEN];
+		long line = pieceSets[c | ROOK] | pieceSets[c | QUEEN];
+		return (Bitboards.KNIGHT_ATTACKS[sq] & pieceSets[c | KNIGHT])
+			 | (Bitboards.PAWN_ATTACKS[1 - color][sq] & pieceSets[c | PAWN])
+			 | (Bitboards.KING_ATTACKS[sq] & pieceSets[c | KING])
+			 | (Bitboards.bishopAttacks(sq, occ) & diagonal)
+			 | (Bitboards.rookAttacks(sq, occ) & line);
+	}
+	
+	/* Works out checkers, pinned and checkMask for the active player.
+	 * A piece is pinned if it is the only piece between its king and an enemy slider that could
+	 * otherwise attack the king. The candidate sliders are found by looking out from the king as
+	 * if the board were empty, so this is two table lookups plus one step per candidate.
+	 */
+	private void updateCheckInfo(){
+		int kingSquare = Bitboards.square(kingx[turn], kingy[turn]);
+		byte them = (byte) (1 - turn);
+		int c = them << 3;
 		
-		return false;
+		checkers = attackersOf(kingSquare, occupied, them);
+		if(checkers == 0)
+			checkMask = ~0L;
+		else if((checkers & (checkers - 1)) == 0) //a single checker can be captured or blocked
+			checkMask = checkers | Bitboards.BETWEEN[kingSquare][Bitboards.lowestSquare(checkers)];
+		else //double check, only the king can move
+			checkMask = 0;
+		
+		pinned = 0;
+		long snipers = (Bitboards.rookAttacks(kingSquare, 0) & (pieceSets[c | ROOK] | pieceSets[c | QUEEN]))
+					 | (Bitboards.bishopAttacks(kingSquare, 0) & (pieceSets[c | BISHOP] | pieceSets[c | QUEEN]));
+		for(; snipers != 0; snipers &= snipers - 1){
+			long blockers = Bitboards.BETWEEN[kingSquare][Bitboards.lowestSquare(snipers)] & occupied;
+			if((blockers & (blockers - 1)) == 0) //exactly one blocker (no blockers means it's a checker)
+				pinned |= blockers & colorSets[turn];
+		}
+	}
+	
+	/* Returns the squares the active player's non-king piece on 'from' is allowed to land on
+	 * without leaving their king in check, whatever the piece can actually reach. Needs updateCheckInfo first.
+	 */
+	private long legalTargets(int from){
+		if((pinned & (1L << from)) != 0) //a pinned piece can only move along the pin
+			return checkMask & Bitboards.LINE[Bitboards.square(kingx[turn], kingy[turn])][from];
+		return checkMask;
+	}
+	
+	/* Returns true iff moving the active player's piece from 'from' to 'to' leaves their king out of check.
+	 * 'capturedSq' is the square of the captured piece, or -1 if the move isn't a capture.
+	 * It only differs from 'to' for an enpassant.
+	 * Works purely on a modified copy of the occupancy, so the board itself is never touched.
+	 * Move generation only needs this for enpassant, where two pieces leave the same rank at once
+	 * and the pin information can't see the discovered check.
+	 */
+	private boolean isSafeMove(int from, int to, int capturedSq) {
+		long removed = (1L << from);
+		if(capturedSq != -1)
+			removed |= (1L << capturedSq);
+		long occ = (occupied & ~removed) | (1L << to);
+		int kingSquare = Bitboards.square(kingx[turn], kingy[turn]);
+		if(kingSquare == from)
+			kingSquare = to;
+		//a captured piece can't give check, so its square is masked out of the attackers
+		return (attackersOf(kingSquare, occ, (byte) (1 - turn)) & ~removed) == 0;
 	}
 
 	/**
@@ -487,278 +1019,281 @@ public class Board {
 			return moveList;
 		if(colorOf(board[x][y]) != turn) //can't move pieces that aren't the active player's
 			return moveList;
-		switch(pieceOf(board[x][y])){
+		MoveList ml = new MoveList(1);
+		generateSquareMoves(ml, 0, Bitboards.square(x, y));
+		boxMoves(ml, 0, moveList);
+		return moveList;
+	}
+	
+	/* Fills the given ply's slot of moveList with every legal move for the active player's piece on square 'from'. */
+	private void generateSquareMoves(MoveList moveList, int ply, int from){
+		moveList.clear(ply);
+		updateCheckInfo();
+		switch(pieceOf(board[Bitboards.fileOf(from)][Bitboards.rankOf(from)])){
 		case PAWN:
-			generatePawnMoves(moveList, x, y);
+			generatePawnMoves(moveList, ply, from);
 			break;
 		case KNIGHT:
-			generatePieceMoves(moveList, x, y, KNIGHT_MOVES, false);
-			break;
 		case BISHOP:
-			generatePieceMoves(moveList, x, y, DIAGONAL_MOVES, true);
-			break;
 		case ROOK:
-			generatePieceMoves(moveList, x, y, LINE_MOVES, true);
-			break;
 		case QUEEN:
-			generatePieceMoves(moveList, x, y, DIAGONAL_MOVES, true);
-			generatePieceMoves(moveList, x, y, LINE_MOVES, true);
+			generatePieceMoves(moveList, ply, from, ~colorSets[turn]);
 			break;
 		case KING:
-			generateKingMoves(moveList);
-			generateCastlingMoves(moveList);
+			generateKingMoves(moveList, ply, ~colorSets[turn]);
+			generateCastlingMoves(moveList, ply);
 			break;
 		}
-		return moveList;
 	}
 	
 	/**
-	 * Returns a list of every legal move from the current game state
+	 * Returns a list of every legal move from the current game state.
+	 * Allocates a fresh list of fresh Moves every time, so searches should use generateMoves(MoveList, int) instead.
 	 */
 	public List<Move> generateMoves() {
-		//TODO: Empirically test to see if 50 is a reasonable starting size for this list
-		List<Move> moveList = new ArrayList<Move>(50);
-
-		for(int x=0; x<8; x++){
-			for(int y=0; y<8; y++){
-				if(isEmpty(board[x][y])) //can't move a piece that isn't there
-					continue;
-				if(colorOf(board[x][y]) != turn) //can't move pieces that aren't yours
-					continue;
-				switch(pieceOf(board[x][y])){
-				case PAWN:
-					generatePawnMoves(moveList, x, y);
-					break;
-				case KNIGHT:
-					generatePieceMoves(moveList, x, y, KNIGHT_MOVES, false);
-					break;
-				case BISHOP:
-					generatePieceMoves(moveList, x, y, DIAGONAL_MOVES, true);
-					break;
-				case ROOK:
-					generatePieceMoves(moveList, x, y, LINE_MOVES, true);
-					break;
-				case QUEEN:
-					generatePieceMoves(moveList, x, y, DIAGONAL_MOVES, true);
-					generatePieceMoves(moveList, x, y, LINE_MOVES, true);
-					break;
-				}
-			}
-		}
-		generateKingMoves(moveList);
-		generateCastlingMoves(moveList);
+		MoveList ml = new MoveList(1);
+		generateMoves(ml, 0);
+		List<Move> moveList = new ArrayList<Move>(ml.size(0));
+		boxMoves(ml, 0, moveList);
 		return moveList;
 	}
 	
-	/** Generates all legal moves for the pawn at (x,y), and adds them to moveList.
-	 *  Note that moving a pawn to the opponents back row is assumed to be a queen promotion,
-	 *  and moving the pawn one past the back row is how a knight promote is represented. (see Move.java)
+	/* Boxes every packed move in the given slot of ml into moveList, skipping any a Move can't express. */
+	private void boxMoves(MoveList ml, int ply, List<Move> moveList){
+		for(int i=0; i<ml.size(ply); i++){
+			int move = ml.get(ply, i);
+			if(Move.isBoxable(move))
+				moveList.add(new Move(move));
+		}
+	}
+	
+	/**
+	 * Fills the given ply's slot of moveList with every legal move from the current game state, as packed moves.
+	 * Anything already in that slot is cleared first. Does no allocation.
+	 * 
+	 * Checks and pins are worked out once up front, so only legal moves are ever generated
+	 * and there's no need to try each move and test for check afterwards.
 	 */
-	public void generatePawnMoves(List<Move> moveList, int x, int y) {
-		int ex, ey;
-		int dir = 1; //direction this pawn moves
-		int homeRow = 1; //this pawn's home row
-		if(turn == BLACK){
-			dir = -1;
-			homeRow = 6;
+	public void generateMoves(MoveList moveList, int ply) {
+		moveList.clear(ply);
+		updateCheckInfo();
+
+		//walks the set bits of each of the active player's piece sets, rather than scanning all 64 squares
+		if(checkMask != 0){ //in double check only the king can move
+			for(long pawns = pieceSets[makeSquare(turn, PAWN)]; pawns != 0; pawns &= pawns - 1)
+				generatePawnMoves(moveList, ply, Bitboards.lowestSquare(pawns));
+			long pieces = colorSets[turn] & ~pieceSets[makeSquare(turn, PAWN)] & ~pieceSets[makeSquare(turn, KING)];
+			for(; pieces != 0; pieces &= pieces - 1)
+				generatePieceMoves(moveList, ply, Bitboards.lowestSquare(pieces), ~colorSets[turn]);
 		}
-		int enpassant = homeRow + (dir*3); //y value at which you can enpassant
+		generateKingMoves(moveList, ply, ~colorSets[turn]);
+		if(checkers == 0) //can't castle out of check
+			generateCastlingMoves(moveList, ply);
+	}
+	
+	/**
+	 * Like generateMoves(MoveList, int), but only generates the legal captures (including enpassant) and queen promotes,
+	 * for quiescence searches that only look at moves that change the material balance.
+	 * Quiet moves are never generated at all, rather than generated and filtered out.
+	 * Rook, bishop and knight promotes are left out too, since a queen is almost always better.
+	 * Note that if the active player is in check, this doesn't generate every way out of it.
+	 */
+	public void generateCaptures(MoveList moveList, int ply) {
+		moveList.clear(ply);
+		updateCheckInfo();
 		
-		//must temporarily move the piece to ensure an otherwise legal move doesn't put active player in check
-		byte orig = board[x][y];
-		board[x][y] = EMPTY;
-		byte captured; //used to remember a 'temporarily captured' piece
+		long enemies = colorSets[1 - turn];
+		if(checkMask != 0){ //in double check only the king can move
+			for(long pawns = pieceSets[makeSquare(turn, PAWN)]; pawns != 0; pawns &= pawns - 1)
+				generatePawnCaptures(moveList, ply, Bitboards.lowestSquare(pawns));
+			long pieces = colorSets[turn] & ~pieceSets[makeSquare(turn, PAWN)] & ~pieceSets[makeSquare(turn, KING)];
+			for(; pieces != 0; pieces &= pieces - 1)
+				generatePieceMoves(moveList, ply, Bitboards.lowestSquare(pieces), enemies);
+		}
+		generateKingMoves(moveList, ply, enemies);
+	}
+	
+	/**
+	 * Generates exactly the legal moves generateCaptures(MoveList, int) leaves out: moves to empty squares
+	 * (other than queen promotes), castling, and rook, bishop and knight promotes, captures or not.
+	 * Between them, the two generate the same moves as generateMoves(MoveList, int), so a search can generate
+	 * the captures first and only generate the rest if the captures didn't already produce a cutoff.
+	 */
+	public void generateQuiets(MoveList moveList, int ply) {
+		moveList.clear(ply);
+		updateCheckInfo();
 		
-		ey = y + dir; //don't have to bounds check because a pawn can never be on opponent's back row
-		if(board[x][ey] == EMPTY){ //can we single push?
-			board[x][ey] = orig;
-			if(!inCheck(turn))
-				moveList.add(new Move(x, y, x, ey, false));
-			board[x][ey] = EMPTY;
-			ey += dir;
-			if(y == homeRow && board[x][ey] == EMPTY){ //can we double push?
-				board[x][ey] = orig;
-				if(!inCheck(turn))
-					moveList.add(new Move(x, y, x, ey, false));
-				board[x][ey] = EMPTY;
-			}
+		long empty = ~occupied;
+		if(checkMask != 0){ //in double check only the king can move
+			for(long pawns = pieceSets[makeSquare(turn, PAWN)]; pawns != 0; pawns &= pawns - 1)
+				generatePawnQuiets(moveList, ply, Bitboards.lowestSquare(pawns));
+			long pieces = colorSets[turn] & ~pieceSets[makeSquare(turn, PAWN)] & ~pieceSets[makeSquare(turn, KING)];
+			for(; pieces != 0; pieces &= pieces - 1)
+				generatePieceMoves(moveList, ply, Bitboards.lowestSquare(pieces), empty);
 		}
+		generateKingMoves(moveList, ply, empty);
+		if(checkers == 0) //can't castle out of check
+			generateCastlingMoves(moveList, ply);
+	}
+	
+	/* Generates all legal moves for the pawn on square 'from', and adds them to moveList.
+	 * Moves onto the back row are added once for each piece the pawn can promote to.
+	 * That's exactly its captures plus its quiet moves, so the two are simply generated one after the other.
+	 */
+	private void generatePawnMoves(MoveList moveList, int ply, int from) {
+		generatePawnCaptures(moveList, ply, from);
+		generatePawnQuiets(moveList, ply, from);
+	}
+	
+	/* Generates the legal captures, enpassants and queen promotes for the pawn on square 'from', and adds them to moveList. */
+	private void generatePawnCaptures(MoveList moveList, int ply, int from) {
+		int x = Bitboards.fileOf(from);
+		int y = Bitboards.rankOf(from);
+		int dir = (turn == WHITE) ? 1 : -1;
+		long legal = legalTargets(from);
+		boolean promotes = (y + dir == 0 || y + dir == 7);
 		
-		ey = y + dir;
-		ex = x + 1;
-		if(ex <= 7 && board[ex][ey] != EMPTY && colorOf(board[ex][ey]) != turn){ //can we capture in +x diagonal?
-			captured = board[ex][ey];
-			board[ex][ey] = orig;
-			if(!inCheck(turn))
-				moveList.add(new Move(x, y, ex, ey, true));
-			board[ex][ey] = captured;
+		long captures = Bitboards.PAWN_ATTACKS[turn][from] & colorSets[1 - turn] & legal;
+		for(; captures != 0; captures &= captures - 1)
+			moveList.add(ply, Move.pack(from, Bitboards.lowestSquare(captures), promotes ? QUEEN : EMPTY, Move.CAPTURE));
+		
+		if(promotes && isEmpty(board[x][y + dir])){
+			int to = Bitboards.square(x, y + dir);
+			if((legal & (1L << to)) != 0)
+				moveList.add(ply, Move.pack(from, to, QUEEN, 0));
 		}
 		
-		ex = x - 1;
-		if(ex >= 0 && board[ex][ey] != EMPTY && colorOf(board[ex][ey]) != turn){ //can we capture in -x diagonal?
-			captured = board[ex][ey];
-			board[ex][ey] = orig;
-			if(!inCheck(turn))
-				moveList.add(new Move(x, y, ex, ey, true));
-			board[ex][ey] = captured;
+		//enpassant is the one move the pin and check masks can't vet, so it gets the full test
+		if(y == ((turn == WHITE) ? 4 : 3) && previousDoublePush != -1 && Math.abs(previousDoublePush - x) == 1){
+			int to = Bitboards.square(previousDoublePush, y + dir);
+			if(isSafeMove(from, to, Bitboards.square(previousDoublePush, y)))
+				moveList.add(ply, Move.pack(from, to, EMPTY, Move.CAPTURE | Move.ENPASSANT));
 		}
+	}
+	
+	/* Generates the legal non-capturing moves and underpromotes for the pawn on square 'from', and adds them to moveList. */
+	private void generatePawnQuiets(MoveList moveList, int ply, int from) {
+		int x = Bitboards.fileOf(from);
+		int y = Bitboards.rankOf(from);
+		int dir = (turn == WHITE) ? 1 : -1;
+		long legal = legalTargets(from);
+		int ey = y + dir;
 		
-		if(y == enpassant && previousDoublePush != -1){ 
-			ex = x + 1;
-			if(previousDoublePush == ex){ //can we enpassant in +x direction?
-				board[ex][ey] = orig;
-				captured = board[ex][y];
-				board[ex][y] = EMPTY;
-				if(!inCheck(turn))
-					moveList.add(new Move(x, y, ex, ey, true));
-				board[ex][ey] = EMPTY;
-				board[ex][y] = captured;
-			}
-			ex = x - 1;
-			if(previousDoublePush == ex){ //can we enpassant in -x direction?
-				board[ex][ey] = orig;
-				captured = board[ex][y];
-				board[ex][y] = EMPTY;
-				if(!inCheck(turn))
-					moveList.add(new Move(x, y, ex, ey, true));
-				board[ex][ey] = EMPTY;
-				board[ex][y] = captured;
+		if(ey == 0 || ey == 7){ //only the underpromotes are quiet
+			long targets = (Bitboards.PAWN_ATTACKS[turn][from] & colorSets[1 - turn]) | (isEmpty(board[x][ey]) ? Bitboards.bit(x, ey) : 0);
+			for(targets &= legal; targets != 0; targets &= targets - 1){
+				int to = Bitboards.lowestSquare(targets);
+				int flags = (Bitboards.fileOf(to) != x) ? Move.CAPTURE : 0;
+				moveList.add(ply, Move.pack(from, to, KNIGHT, flags));
+				moveList.add(ply, Move.pack(from, to, ROOK, flags));
+				moveList.add(ply, Move.pack(from, to, BISHOP, flags));
 			}
+			return;
 		}
 		
-		board[x][y] = orig; //restores board state
+		if(isEmpty(board[x][ey])){ //can we single push?
+			int to = Bitboards.square(x, ey);
+			if((legal & (1L << to)) != 0)
+				moveList.add(ply, Move.pack(from, to, EMPTY, 0));
+			ey += dir;
+			if(y == ((turn == WHITE) ? 1 : 6) && isEmpty(board[x][ey])){ //can we double push?
+				to = Bitboards.square(x, ey);
+				if((legal & (1L << to)) != 0)
+					moveList.add(ply, Move.pack(from, to, EMPTY, Move.DOUBLE_PUSH));
+			}
+		}
 	}
 	
-	/** Given a moveList to add to, a pair of coordinates, a list of move directions, 
-	 *  and whether the piece can multi-move, adds to moveList all legal moves for the piece.
-	 *  This generic method serves to generate moves for the bishop, knight, rook, and queen.
+	/* Adds to moveList all legal moves for the piece on square 'from' that land on one of the squares in 'allowed'.
+	 * This generic method serves to generate moves for the bishop, knight, rook, and queen.
 	 */
-	public void generatePieceMoves(List<Move> moveList, int x, int y, int[] moves, boolean multi) {
-		int ex, ey, dx, dy;
-		
-		//must temporarily move the piece to ensure an otherwise legal move doesn't put active player in check
-		byte orig = board[x][y];
-		board[x][y] = EMPTY;
-		byte captured; //used to remember a 'temporarily captured' piece
-		
-		for(int i=0; i<moves.length; i+=2){
-			dx = moves[i];
-			dy = moves[i+1];
-			ex = x + dx;
-			ey = y + dy;
-			while(((ex | ey) & 8) == 0){ //checks bounds
-				if(isEmpty(board[ex][ey])){
-					board[ex][ey] = orig;
-					if(!inCheck(turn))
-						moveList.add(new Move(x, y, ex, ey, false));
-					board[ex][ey] = EMPTY;
-					if(!multi)
-						break;
-				}
-				else if(colorOf(board[ex][ey]) != turn){ //did we hit an opponent's piece?
-					captured = board[ex][ey];
-					board[ex][ey] = orig;
-					if(!inCheck(turn))
-						moveList.add(new Move(x, y, ex, ey, true));
-					board[ex][ey] = captured;
-					break;
-				}
-				else //we hit one of our own pieces
-					break;
-				ex += dx;
-				ey += dy;
-			}
+	private void generatePieceMoves(MoveList moveList, int ply, int from, long allowed) {
+		long targets;
+		switch(pieceOf(board[Bitboards.fileOf(from)][Bitboards.rankOf(from)])){
+		case KNIGHT:
+			targets = Bitboards.KNIGHT_ATTACKS[from];
+			break;
+		case BISHOP:
+			targets = Bitboards.bishopAttacks(from, occupied);
+			break;
+		case ROOK:
+			targets = Bitboards.rookAttacks(from, occupied);
+			break;
+		case QUEEN:
+			targets = Bitboards.queenAttacks(from, occupied);
+			break;
+		default:
+			return;
 		}
-		board[x][y] = orig; //restores board state
+		addMoves(moveList, ply, from, targets & allowed & legalTargets(from));
 	}
 
-	/** Separate function handles king moves because kingx and kingy must also be manipulated.
-	 *  Adds to moveList all legal moves for the current player's king. 
+	/* Separate function handles king moves because its new square must be checked for attacks rather than the old one.
+	 * Adds to moveList all legal moves for the current player's king that land on one of the squares in 'allowed'.
+	 * Doesn't include castling.
 	 */
-	public void generateKingMoves(List<Move> moveList) {
-		int x = kingx[turn];
-		int y = kingy[turn];
-		int ex, ey, dx, dy;
-		
-		//must temporarily move the piece to ensure an otherwise legal move doesn't put active player in check
-		byte orig = board[x][y];
-		board[x][y] = EMPTY;
-		byte captured; //used to remember a 'temporarily captured' piece
-
-		for(dx = -1; dx < 2; dx++){
-			for(dy = -1; dy < 2; dy++){
-				ex = x + dx;
-				ey = y + dy;
-				if(dx == 0 && dy == 0) //can't move nowhere!
-					continue;
-				if(((ex | ey) & 8) != 0) //bounds check
-					continue;
-				if(isEmpty(board[ex][ey])){
-					board[ex][ey] = orig;
-					kingx[turn] = ex;
-					kingy[turn] = ey;
-					if(!inCheck(turn))
-						moveList.add(new Move(x, y, ex, ey, false));
-					board[ex][ey] = EMPTY;
-				}
-				else if(colorOf(board[ex][ey]) != turn){ //something here to capture?
-					captured = board[ex][ey];
-					board[ex][ey] = orig;
-					kingx[turn] = ex;
-					kingy[turn] = ey;
-					if(!inCheck(turn))
-						moveList.add(new Move(x, y, ex, ey, true));
-					board[ex][ey] = captured;
-				}
-			}
+	private void generateKingMoves(MoveList moveList, int ply, long allowed) {
+		int from = Bitboards.square(kingx[turn], kingy[turn]);
+		long occ = occupied & ~(1L << from); //so a slider's attack carries on through the king's old square
+		byte them = (byte) (1 - turn);
+		long targets = Bitboards.KING_ATTACKS[from] & allowed;
+		long safe = 0;
+		for(long t = targets; t != 0; t &= t - 1){
+			int to = Bitboards.lowestSquare(t);
+			if(attackersOf(to, occ, them) == 0)
+				safe |= 1L << to;
+		}
+		addMoves(moveList, ply, from, safe);
+	}
+	
+	/* Adds a move from 'from' to each square in 'targets'. Every target must already be known to be legal. */
+	private void addMoves(MoveList moveList, int ply, int from, long targets) {
+		int to;
+		for(; targets != 0; targets &= targets - 1){
+			to = Bitboards.lowestSquare(targets);
+			if((colorSets[1 - turn] & (1L << to)) != 0)
+				moveList.add(ply, Move.pack(from, to, EMPTY, Move.CAPTURE));
+			else
+				moveList.add(ply, Move.pack(from, to, EMPTY, 0));
 		}
-		
-		board[x][y] = orig; //restores board state
-		kingx[turn] = x;
-		kingy[turn] = y;
 	}
 
-	/** Adds to moveList all legal castling moves for the current player. */
-	public void generateCastlingMoves(List<Move> moveList) {
+	/* Adds to moveList all legal castling moves for the current player. */
+	private void generateCastlingMoves(MoveList moveList, int ply) {
 		int x = kingx[turn];
 		int y = kingy[turn];
 		
 		if(hasCastled[turn]) //can't castle twice
 			return;
 
-		//must temporarily move the piece to ensure an otherwise legal move doesn't put active player in check
-		byte orig = board[x][y];
-		board[x][y] = EMPTY;
+		//the king's own square is treated as empty, as it's the king that is moving through the others
+		long occ = occupied & ~Bitboards.bit(x, y);
+		byte them = (byte) (1 - turn);
+		int from = Bitboards.square(x, y);
 
 		/* Check if kingside castle is possible. */
 		boolean legalCastle = true;
 		if(kingsideCastle[turn]){ //the king + rook must still be in their starting positions if this is true
 			for(int i=4; i<7; i++){ //can't castle out of, through, or into check
-				kingx[turn] = i;
-				if(!isEmpty(board[i][y]) || inCheck(turn))
+				if(!isEmpty(board[i][y]) && i != x || attackersOf(Bitboards.square(i, y), occ, them) != 0)
 					legalCastle = false;
 			}
 			if(legalCastle)
-				moveList.add(new Move(x, y, 6, y, false));
+				moveList.add(ply, Move.pack(from, Bitboards.square(6, y), EMPTY, Move.CASTLE));
 		}
 
 		/* Check if queenside castle is possible */
 		legalCastle = true;
 		if(queensideCastle[turn]){ //the king + rook must still be in their starting positions if this is true
 			for(int i=4; i>1; i--){ //can't castle out of, through, or into check
-				kingx[turn] = i;
-				if(!isEmpty(board[i][y]) || inCheck(turn))
+				if(!isEmpty(board[i][y]) && i != x || attackersOf(Bitboards.square(i, y), occ, them) != 0)
 					legalCastle = false;
 			}
 			if(!isEmpty(board[1][y])) //rook can't be blocked
 				legalCastle = false;
 			if(legalCastle)
-				moveList.add(new Move(x, y, 2, y, false));
+				moveList.add(ply, Move.pack(from, Bitboards.square(2, y), EMPTY, Move.CASTLE));
 		}
-		
-		board[x][y] = orig;
-		kingx[turn] = x;
-		kingy[turn] = y;
 	}
 
 	public boolean equals(Object o) {
@@ -782,17 +1317,34 @@ public class Board {
 			return false;
 		if(turn != b.turn)
 			return false;
-		for(int x=0; x<8; x++)
-			for(int y=0; y<8; y++)
-				if(board[x][y] != b.board[x][y])
-					return false;
+		for(int i=0; i<pieceSets.length; i++) //twelve longs rather than 64 bytes
+			if(pieceSets[i] != b.pieceSets[i])
+				return false;
 
 		return true;
 	}
 
 	public int hashCode(){
+		return (int) (hash ^ (hash >>> 32));
+	}
+	
+	/**
+	 * Returns this position's 64 bit Zobrist key. It covers every piece, castling rights, whether each player
+	 * has castled, the enpassant column and whose turn it is, and is kept up to date by makeMove and unmakeMove.
+	 * Two positions with the same key can be treated as the same position (a false match is astronomically unlikely),
+	 * so it is what transposition tables should store.
+	 */
+	public long getKey(){
 		return hash;
 	}
+	
+	/**
+	 * Returns a Zobrist key of the pawns alone: two positions with the same pawns of each color on the same squares
+	 * have the same pawn key, whatever else differs. For caching anything worked out from the pawns (see PawnHashTable).
+	 */
+	public long getPawnKey(){
+		return pawnHash;
+	}
 
 	/* 
 	 * Helper function for toString(), converts the byte representation of a piece to a string.
@@ -4,10 +4,15 @@ package chess_backend;
  * Encapsulates a chess move.
  * sx, sy are the starting coordinates of the piece moved, and ex, ey are the ending coordinates.
  * isCaptures tracks if the move was a capture move.
- * 
+ *
  * A Move is generated by a player, and can then be applied to a Board to get the result of that move.
  * Board.java has all the relevant methods for applying a Move to a Board, this class is mostly a glorified struct.
- * 
+ *
+ * The search doesn't use Move objects at all. It passes moves around as packed ints instead
+ * (see the static methods below), and a Move is just the boxed form of one of those for the frontends.
+ * Packed moves can express every promotion, but a Move can only express queen promotes and
+ * knight promotes (ordering a pawn one past the back row), so rook and bishop promotes never get boxed.
+ *
  * @author Kelton Finch
  */
 public class Move {
@@ -16,7 +21,20 @@ public class Move {
 	public int ex;
 	public int ey;
 	public boolean isCapture;
-	
+
+	/* Packed move layout:
+	 *   bits 0-5   start square (see Bitboards.java for square indices)
+	 *   bits 6-11  end square
+	 *   bits 12-14 piece type promoted to, or EMPTY if not a promotion
+	 *   bits 15-18 flags
+	 * A packed move of 0 (a1 to a1) can never be a real move, so it means 'no move'.
+	 */
+	public static final int NONE = 0;
+	public static final int CAPTURE = 1 << 15;
+	public static final int ENPASSANT = 1 << 16;
+	public static final int CASTLE = 1 << 17;
+	public static final int DOUBLE_PUSH = 1 << 18;
+
 	public Move(int sx, int sy, int ex, int ey, boolean isCapture){
 		this.sx = sx;
 		this.sy = sy;
@@ -24,7 +42,51 @@ public class Move {
 		this.ey = ey;
 		this.isCapture = isCapture;
 	}
-	
+
+	/** Boxes a packed move. */
+	public Move(int move){
+		int from = fromSquare(move);
+		int to = toSquare(move);
+		sx = Bitboards.fileOf(from);
+		sy = Bitboards.rankOf(from);
+		ex = Bitboards.fileOf(to);
+		ey = Bitboards.rankOf(to);
+		if(promotionOf(move) == Board.KNIGHT) //knight promotes are ordered off the edge of the board
+			ey += (ey == 7) ? 1 : -1;
+		isCapture = isCapture(move);
+	}
+
+	/** Packs a move into an int. */
+	public static int pack(int from, int to, byte promotion, int flags){
+		return from | (to << 6) | (promotion << 12) | flags;
+	}
+
+	/** Returns the start square of a packed move. */
+	public static int fromSquare(int move){
+		return move & 63;
+	}
+
+	/** Returns the end square of a packed move. */
+	public static int toSquare(int move){
+		return (move >>> 6) & 63;
+	}
+
+	/** Returns the piece type a packed move promotes to, or EMPTY if it isn't a promotion. */
+	public static byte promotionOf(int move){
+		return (byte) ((move >>> 12) & 7);
+	}
+
+	/** Returns true iff a packed move captures something (including enpassant). */
+	public static boolean isCapture(int move){
+		return (move & CAPTURE) != 0;
+	}
+
+	/** Returns true iff a packed move can be boxed into a Move. */
+	public static boolean isBoxable(int move){
+		byte promotion = promotionOf(move);
+		return promotion == Board.EMPTY || promotion == Board.QUEEN || promotion == Board.KNIGHT;
+	}
+
 	public String toNotation(){
 		Coordinate sc = new Coordinate(sx,sy);
 		Coordinate ec = new Coordinate(ex,ey);
@@ -33,7 +95,7 @@ public class Move {
 			result += " *";
 		return result;
 	}
-	
+
 	public String toString(){
 		Coordinate sc = new Coordinate(sx,sy);
 		Coordinate ec = new Coordinate(ex,ey);
@@ -42,7 +104,7 @@ public class Move {
 			result += "*";
 		return result;
 	}
-	
+
 	/**
 	 * Checks for equality of this and o, but does not care if isCapture is different.
 	 * @see java.lang.Object#equals(java.lang.Object)
@@ -51,5 +113,5 @@ public class Move {
 		Move m = (Move)o;
 		return ((sx == m.sx) && (sy == m.sy) && (ex == m.ex) && (ey == m.ey));
 	}
-	
+
 }
@@ -0,0 +1,74 @@
+package chess_backend;
+
+/**
+ * MoveList.java
+ * A reusable store of packed moves (see Move.java) for a tree search, with one slot per ply.
+ * The whole thing is a single int[] allocated up front, so filling and reading it never allocates.
+ *
+ * A search keeps one MoveList, and each node generates its moves into the slot for its own ply:
+ *   board.generateMoves(moveList, ply);
+ *   for(int i=0; i<moveList.size(ply); i++){ int m = moveList.get(ply, i); ... }
+ * A child only ever touches deeper slots, so the parent's moves are still there when it returns.
+ */
+public class MoveList {
+
+	public static final int MAX_PLY = 128; //deepest ply a default MoveList can hold
+	public static final int MAX_MOVES = 256; //the most moves any position can have is 218
+
+	private final int[] moves;
+	private final int[] sizes;
+
+	/** Creates a MoveList with room for MAX_PLY plies. */
+	public MoveList(){
+		this(MAX_PLY);
+	}
+
+	/** Creates a MoveList with room for the given number of plies. */
+	public MoveList(int plies){
+		moves = new int[plies * MAX_MOVES];
+		sizes = new int[plies];
+	}
+
+	/** Returns the number of bytes the list's storage takes up. */
+	public long getSizeBytes(){
+		return (moves.length + sizes.length) * 4L;
+	}
+
+	/** Empties the slot for the given ply. */
+	public void clear(int ply){
+		sizes[ply] = 0;
+	}
+
+	/** Adds a packed move to the slot for the given ply. */
+	public void add(int ply, int move){
+		moves[ply * MAX_MOVES + sizes[ply]++] = move;
+	}
+
+	/** Returns the number of moves in the slot for the given ply. */
+	public int size(int ply){
+		return sizes[ply];
+	}
+
+	/** Returns the i'th packed move in the slot for the given ply. */
+	public int get(int ply, int i){
+		return moves[ply * MAX_MOVES + i];
+	}
+
+	/** Swaps two moves in the slot for the given ply. Useful for move ordering. */
+	public void swap(int ply, int i, int j){
+		int base = ply * MAX_MOVES;
+		int temp = moves[base + i];
+		moves[base + i] = moves[base + j];
+		moves[base + j] = temp;
+	}
+
+	/** Returns true iff the slot for the given ply holds the given packed move. */
+	public boolean contains(int ply, int move){
+		int base = ply * MAX_MOVES;
+		for(int i=0; i<sizes[ply]; i++)
+			if(moves[base + i] == move)
+				return true;
+		return false;
+	}
+
+}
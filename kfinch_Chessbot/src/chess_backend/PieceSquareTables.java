@@ -0,0 +1,52 @@
+package chess_backend;
+
+/**
+ * PieceSquareTables.java
+ * A value for every piece on every square, in a midgame and an endgame version, which a Board keeps running sums of
+ * for each player as pieces move (see Board.setPieceSquareTables). An evaluator that scores positions this way,
+ * material included, can then read a position's score off the board instead of adding it up at every leaf.
+ *
+ * Both tables are flattened into a single int[] indexed by piece*64 + square, where piece is the byte packing of
+ * a color and a piece type (see Board.makeSquare) and square is y*8 + x (see Bitboards.square).
+ * So black's values are stored separately from white's, already flipped (or not) however the evaluator wants them.
+ */
+public class PieceSquareTables {
+
+	//Plain material values, with no positional part. What a Board keeps sums of unless it's told otherwise.
+	public static final PieceSquareTables MATERIAL = material(new int[]{0, 100, 300, 300, 500, 900, 0});
+
+	final int[] midgame;
+	final int[] endgame;
+
+	/**
+	 * Creates tables from the given midgame and endgame values, each indexed by piece*64 + square (see above).
+	 * The arrays are used as is, so they shouldn't be changed afterward.
+	 */
+	public PieceSquareTables(int[] midgame, int[] endgame){
+		if(midgame.length != 16*64 || endgame.length != 16*64)
+			throw new IllegalArgumentException("Tables need 16*64 entries, not " + midgame.length + " and " + endgame.length);
+		this.midgame = midgame;
+		this.endgame = endgame;
+	}
+
+	/** Returns the midgame value of the given piece (color and type) on the given square. */
+	public int midgame(byte piece, int sq){
+		return midgame[piece*64 + sq];
+	}
+
+	/** Returns the endgame value of the given piece (color and type) on the given square. */
+	public int endgame(byte piece, int sq){
+		return endgame[piece*64 + sq];
+	}
+
+	/* Builds tables worth the given value for each piece type, wherever the piece is. */
+	private static PieceSquareTables material(int[] values){
+		int[] table = new int[16*64];
+		for(byte color = Board.WHITE; color <= Board.BLACK; color++)
+			for(byte type = Board.PAWN; type <= Board.KING; type++)
+				for(int sq=0; sq<64; sq++)
+					table[Board.makeSquare(color, type)*64 + sq] = values[type];
+		return new PieceSquareTables(table, table);
+	}
+
+}
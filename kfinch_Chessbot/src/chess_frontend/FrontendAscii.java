@@ -47,8 +47,10 @@ public class FrontendAscii {
 	}
 	
 	public static void launchTimedHotseatGame(){
-		//TODO: Implement timing apparatus
-		System.out.println("Not yet implemented! Sorry )=\n\n");
+		Scanner input = new Scanner(System.in);
+		long time = promptInt(input, "How many minutes should each player get?", 1, 180) * 60000L;
+		long increment = promptInt(input, "How many seconds should be added after each move?", 0, 60) * 1000L;
+		LocalGameAscii.runGameTimed(new Board(), new HumanPlayer(), new HumanPlayer(), time, increment);
 	}
 	
 	public static void launchUntimedBotGame(){
@@ -65,6 +67,19 @@ public class FrontendAscii {
 			botStrength = input.nextInt();
 		}
 		
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int botThreads = 1;
+		if(maxThreads > 1){
+			System.out.println("How many threads should the bot search with?\n"
+							 + "Choose between 1 and " + maxThreads + ". More threads search faster.\n");
+			botThreads = input.nextInt();
+			while(botThreads < 1 || botThreads > maxThreads){
+				System.out.println(invalid);
+				System.out.println("Enter a number of threads between 1 and " + maxThreads + " (inclusive)");
+				botThreads = input.nextInt();
+			}
+		}
+		
 		System.out.println("Would you like the bot to be verbose? (y) or (n)");
 		char verboseOption = input.next().charAt(0);
 		while(verboseOption != 'y' && verboseOption != 'n'){
@@ -86,17 +101,57 @@ public class FrontendAscii {
 			botVerbose = false;
 		
 		if(colorOption == 'w'){
-			LocalGameAscii.runGame(new Board(), new HumanPlayer(), new ChessBot(botStrength,botVerbose));
+			LocalGameAscii.runGame(new Board(), new HumanPlayer(), new ChessBot(botStrength,botThreads,botVerbose));
 		}
 		else{
-			LocalGameAscii.runGame(new Board(), new ChessBot(botStrength,botVerbose), new HumanPlayer());
+			LocalGameAscii.runGame(new Board(), new ChessBot(botStrength,botThreads,botVerbose), new HumanPlayer());
 		}
 		
 	}
 	
 	public static void launchTimedBotGame(){
-		//TODO: Implement timing apparatus
-		System.out.println("Not yet implemented! Sorry )=\n\n");
+		Scanner input = new Scanner(System.in);
+		long time = promptInt(input, "How many minutes should each player get?", 1, 180) * 60000L;
+		long increment = promptInt(input, "How many seconds should be added after each move?", 0, 60) * 1000L;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int botThreads = 1;
+		if(maxThreads > 1)
+			botThreads = promptInt(input, "How many threads should the bot search with?", 1, maxThreads);
+		
+		System.out.println("Would you like the bot to be verbose? (y) or (n)");
+		char verboseOption = input.next().charAt(0);
+		while(verboseOption != 'y' && verboseOption != 'n'){
+			System.out.println(invalid);
+			System.out.println("Enter 'y' or 'n'");
+			verboseOption = input.next().charAt(0);
+		}
+		
+		System.out.println("Would you like to play as White (w) or Black (b)?");
+		char colorOption = input.next().charAt(0);
+		while(colorOption != 'w' && colorOption != 'b'){
+			System.out.println(invalid);
+			System.out.println("Enter 'w' or 'b'");
+			colorOption = input.next().charAt(0);
+		}
+		
+		//the bot searches as deep as its clock allows, so its depth doesn't matter here
+		ChessBot bot = new ChessBot(6, botThreads, verboseOption == 'y');
+		if(colorOption == 'w')
+			LocalGameAscii.runGameTimed(new Board(), new HumanPlayer(), bot, time, increment);
+		else
+			LocalGameAscii.runGameTimed(new Board(), bot, new HumanPlayer(), time, increment);
+	}
+	
+	/* Asks for a number between min and max (inclusive), until one is given. */
+	private static int promptInt(Scanner input, String question, int min, int max){
+		System.out.println(question + "\nChoose between " + min + " and " + max + ".\n");
+		int answer = input.nextInt();
+		while(answer < min || answer > max){
+			System.out.println(invalid);
+			System.out.println("Enter a number between " + min + " and " + max + " (inclusive)");
+			answer = input.nextInt();
+		}
+		return answer;
 	}
 	
 	
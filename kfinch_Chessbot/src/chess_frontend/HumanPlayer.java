@@ -69,9 +69,9 @@ public class HumanPlayer implements Player {
 		return m;
 	}
 
-	public Move getMoveTimed(Board b) {
-		//TODO: Implement with proper signature
-		return null;
+	//A human takes however long they take, it's up to the game to keep their clock.
+	public Move getMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo) {
+		return getMove(b);
 	}
 	
 }
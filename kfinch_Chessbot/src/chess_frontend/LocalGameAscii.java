@@ -28,24 +28,9 @@ public class LocalGameAscii {
 		Move m;
 		while(true){
 			System.out.println(gameState);
-			if(gameState.generateMoves().isEmpty()){ //The game is over.
-				if(gameState.inCheck(gameState.getTurn())){
-					System.out.println("Checkmate!");
-					if(gameState.getTurn() == Board.WHITE){
-						System.out.println("White wins!");
-						return 1;
-					}
-					else{
-						System.out.println("Black wins!");
-						return 0;
-					}
-				}
-				else{
-					System.out.println("Stalemate!");
-					//System.out.println("Everybody loses!");
-					return 2;
-				}
-			}
+			int result = gameOver(gameState);
+			if(result != -1)
+				return result;
 			else if(gameState.getTurn() == Board.WHITE){ //It's white's turn.
 				do{
 					m = white.getMove(gameState);
@@ -61,8 +46,79 @@ public class LocalGameAscii {
 		}
 	}
 	
-	public int runGameTimed(Board gameState, Player white, Player black){
-		return -1; //TODO: Implement, changing signature as needed to accommodate timing.
+	/**
+	 * Runs a game of hot-seat chess on a clock. Each player starts with the same time,
+	 * and gets the increment added after each of their moves. A player who runs out of time loses.
+	 * This method will check the player's requested moves to ensure they're legal.
+	 * @param gameState - The game state from which to start.
+	 * @param white - The white player, can be a human or bot.
+	 * @param black - The black player, can be a human or bot.
+	 * @param timeMillis - The time each player starts with, in milliseconds.
+	 * @param incrementMillis - The time added to a player's clock after each of their moves, in milliseconds.
+	 * @return - 0 for white victory, 1 for black victory, 2 for stalemate.
+	 */
+	public static int runGameTimed(Board gameState, Player white, Player black, long timeMillis, long incrementMillis){
+		long[] clock = {timeMillis, timeMillis}; //indexed by color
+		Move m;
+		while(true){
+			System.out.println(gameState);
+			System.out.println("White: " + clockToString(clock[Board.WHITE]) + "   Black: " + clockToString(clock[Board.BLACK]));
+			int result = gameOver(gameState);
+			if(result != -1)
+				return result;
+			
+			byte turn = gameState.getTurn();
+			Player player = (turn == Board.WHITE) ? white : black;
+			long start = System.currentTimeMillis();
+			do{
+				m = player.getMoveTimed(gameState, clock[turn], incrementMillis, 0);
+			} while(m == null || !gameState.isLegalMove(m)); //check move legality
+			clock[turn] -= System.currentTimeMillis() - start;
+			if(clock[turn] < 0){
+				if(turn == Board.WHITE){
+					System.out.println("White ran out of time! Black wins!");
+					return 1;
+				}
+				else{
+					System.out.println("Black ran out of time! White wins!");
+					return 0;
+				}
+			}
+			clock[turn] += incrementMillis;
+			gameState.makeMove(m);
+			System.out.println(m.toNotation() + "\n");
+		}
+	}
+	
+	/*
+	 * Checks whether the game is over, printing the result if it is.
+	 * Returns 0 for white victory, 1 for black victory, 2 for stalemate, or -1 if the game isn't over.
+	 */
+	private static int gameOver(Board gameState){
+		if(!gameState.generateMoves().isEmpty())
+			return -1;
+		if(gameState.inCheck(gameState.getTurn())){
+			System.out.println("Checkmate!");
+			if(gameState.getTurn() == Board.WHITE){
+				System.out.println("Black wins!");
+				return 1;
+			}
+			else{
+				System.out.println("White wins!");
+				return 0;
+			}
+		}
+		else{
+			System.out.println("Stalemate!");
+			//System.out.println("Everybody loses!");
+			return 2;
+		}
+	}
+	
+	/* Formats a clock's time as minutes:seconds. */
+	private static String clockToString(long millis){
+		long seconds = Math.max(0, millis) / 1000;
+		return (seconds / 60) + ":" + String.format("%02d", seconds % 60);
 	}
 	
 }
@@ -10,5 +10,6 @@ import chess_backend.Move;
  */
 public interface Player {
 	public Move getMove(Board b);
-	public Move getMoveTimed(Board b); //TODO: change signature / implement when I figure out what I need for this
+	//Times are in milliseconds. movesToGo is the number of moves until the next time control, or 0 if there isn't one.
+	public Move getMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo);
 }
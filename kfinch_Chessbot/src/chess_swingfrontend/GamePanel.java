@@ -20,8 +20,9 @@ import javax.swing.Timer;
 
 import chess_backend.Board;
 import chess_backend.Move;
-import chessbot.BasicEvaluator;
+import chessbot.IncrementalEvaluator;
 import chessbot.ChessBotWorker;
+import chessbot.TranspositionTable;
 
 /**
  * GamePanel.java
@@ -61,6 +62,7 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
 	private ChessGameSwing parent;
 	
 	private ChessBotWorker chessBot; //the worker thread that will run bot computations
+	private TranspositionTable botTable; //the bot's transposition table, kept for the whole game
 	private Move bestMove; //best move found by bot (so far)
 	private int botSearchDepth; //maximum depth to which the bot will search (set in prefs)
 	private int botSearchTime; //maximum time the bot will search for (in milliseconds) (set in prefs)
@@ -97,6 +99,7 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
 		botSearchDepth = DEFAULT_BOT_SEARCH_DEPTH; //TODO: make this prefs controlled
 		botSearchTime = DEFAULT_BOT_SEARCH_TIME; //TODO: make this prefs controlled
 		botColor = Board.BLACK; //TODO: make this prefs controlled
+		botTable = new TranspositionTable();
 		
 		boardPanel = new BoardPanel(this);
 		add(boardPanel);
@@ -213,7 +216,7 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
 	 */
 	protected void requestBotMove(){
 		//TODO: Implement timed moves, clean this up in general.
-		chessBot = new ChessBotWorker(getGameState(), botSearchDepth, new BasicEvaluator(), this, true);
+		chessBot = new ChessBotWorker(getGameState(), botSearchDepth, new IncrementalEvaluator(), botTable, this, true);
 		chessBot.execute();
 		
 		turnTimer = new Timer(botSearchTime, this);
@@ -237,7 +240,7 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
 	protected void finishBotMove(){
 		requestMove(bestMove);
 		bestMove = null;
-		chessBot.cancel(true);
+		chessBot.stopSearch(); //the search doesn't stop for cancel(true), as it ignores interrupts
 		repaint();
 	}
 	
@@ -265,6 +268,7 @@ public class GamePanel extends JPanel implements MouseListener, MouseMotionListe
 	private void setStartingPosition(){
 		gameHistory = new ArrayList<Board>();
 		moveHistory = new ArrayList<Move>();
+		botTable.clear();
 		Board startingPos = new Board();
 		gameHistory.add(startingPos);
 		repaint();
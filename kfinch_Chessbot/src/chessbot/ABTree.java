@@ -1,167 +1,61 @@
 package chessbot;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import chess_backend.Board;
 import chess_backend.Move;
 
 /**
  * ABTree.java
  * A Minimax tree with alpha-beta pruning for searching the game tree.
- * This search tree is further optimized with a tranposition table and iterative deepening.
+ * The search itself is done by a SearchEngine (see SearchEngine.java), this adapts it to the SearchTree interface.
  */
 public class ABTree implements SearchTree {
 	
+	private SearchEngine engine;
 	
-	private int fixedDepth;
-	protected Move bestMove;
-	private Evaluator e;
-	private int checkmate;
-	private int stalemate;
-	
-	//The switch for verbose mode, and some vars for keeping track of stats to be printed.
+	//The switch for verbose mode, which prints each iteration and a summary of the search.
 	private boolean verbose;
-	private int posEvalCount;
-	private int evalsSkipped;
-
-	//Keeps a store of previously evaluated board positions so as to not redundantly search the same board state repeatedly.
-	private Map<Board,PositionInfo> transpositionTable;
 	
 	public ABTree(Evaluator e){
-		this.e = e;
-		checkmate = e.getCheckmate();
-		stalemate = e.getStalemate();
-		transpositionTable = new HashMap<Board,PositionInfo>();
-		verbose = false;
+		this(e, false);
 	}
 	
 	public ABTree(Evaluator e, boolean verbose){
-		this(e);
+		engine = new SearchEngine(e);
 		this.verbose = verbose;
+		if(verbose)
+			engine.addListener(new VerboseSearchListener());
 	}
 
 	/**
 	 * Searches to the specified depth starting from the specified board position, and returns the best move found.
 	 */
 	public Move getBestMoveFixed(Board b, int depth) {
-		posEvalCount = 0;
-		evalsSkipped = 0;
-		transpositionTable.clear(); //Table gets WAY too big if not cleared between calls.
-		bestMove = null;
-		
-		long beginTime, endTime;
-		beginTime = System.nanoTime();
-		//TODO: Search clearly slows WAY down when nearing OOM without doing much useful work. Investigate possible fixes.
-		try{
-			//search is progressively deepened, with the best move from previous iterations searched first.
-			for(int i=2; i<=depth; i++){
-				if(verbose)
-					System.out.println("Searching at depth " + i + "...");
-				fixedDepth = i;
-				treeSearchRecurse(b,i,-Integer.MAX_VALUE,Integer.MAX_VALUE);
-				if(verbose)
-					System.out.println("Current best move found: " + bestMove.toNotation());
-			}
-		//if we OOM during a tree search, just return our best working solution.
-		} catch (OutOfMemoryError e){
-			if(verbose)
-				System.out.println("Ran out of memory! Returning best working solution.");
-		}
-		endTime = System.nanoTime();
-		
-		if(verbose){
-			System.out.println("Search took " + ((endTime - beginTime)/1000000000) + " seconds");
-			System.out.println("Positions evaluated: " + posEvalCount);
-			System.out.println("Evaluations skipped: " + evalsSkipped);
-			System.out.println("TT Size: " + transpositionTable.size());
-		}
-		return bestMove;
+		return search(b, new SearchLimits(depth));
 	}
 	
-	/*
-	 * Recursive helper for getBestMoveFixed. Performs an alpha-beta pruned minimax tree search.
-	 * Optimizes search time via a transposition table.
-	 * Modifies bestMove as a side effect.
-	 */
-	private int treeSearchRecurse(Board b, int depth, int alpha, int beta){
-		posEvalCount++;
-		
-		//This comes before transposition table stuff because attempting to use 
-		//transposition tables at depth 0 results in pretty immediate OOM.
-		if(depth == 0)
-			return e.evaluate(b);
-		
-		PositionInfo prevEval = transpositionTable.get(b);
-		
-		//if this position has been previously evaluated at at least as much depth, just use that evaluation
-		if(prevEval != null && prevEval.depth >= depth){
-			evalsSkipped++;
-			return prevEval.evaluation;
-		}
-		
-		List<Move> ml = b.generateMoves();
-		
-		if(ml.isEmpty()){ //i.e. board is in a game over position
-			if(b.inCheck(b.getTurn())) //checkmate!
-				return -checkmate;
-			else 				  //stalemate!
-				return -stalemate;
-		}
-		
-		int curr;
-		
-		//If this is top call, search current best move first.
-		//This produces more sensible behavior when the search must be stopped early due to running out of memory or time.
-		//In addition, searching the probable best position first usually results in much more AB pruning.
-		//Note that this won't cause a redundant search of bestMove in the following for loop
-		//because this search's entry will have been added to the tranposition table.
-		if(fixedDepth == depth && bestMove != null){
-			curr = -treeSearchRecurse(b.afterMove(bestMove),depth-1,-beta,-alpha);
-			if(curr > alpha)
-				alpha = curr;
-			//no need to set bestMove here: it already is bestMove.
-		}
-		
-		//Recursively searches all possible moves from this position, looking for the best one.
-		for(Move m : ml){
-			curr = -treeSearchRecurse(b.afterMove(m),depth-1,-beta,-alpha);  
-			if(curr > alpha){
-				alpha = curr;
-				if(fixedDepth == depth)
-					bestMove = m;
-			}
-			if(alpha >= beta)
-				break;
-		}
-		
-		//Add the new (or deeper) evaluation to the transposition table.
-		transpositionTable.put(b, new PositionInfo(depth, alpha));
-		
-		return alpha;
-	}
-
-	/*
-	 * This class is used as a glorified struct for the transposition table.
-	 * The transposition table is a Map with Key -> Board and Value -> PositionInfo.
-	 * 'depth' is the depth at which the board-key was evaluated,
-	 * and 'evaluation' is the resulting strength valuation of the board-key at that depth.
+	/**
+	 * Searches as deeply as the time allows starting from the specified board position, and returns the best move found.
+	 * The search is budgeted from the given time left and increment (in milliseconds), and moves until the next
+	 * time control (0 if there isn't one), see TimeManager.
 	 */
-	private class PositionInfo{
-		private int depth;
-		private int evaluation;
-		
-		private PositionInfo(int depth, int evaluation){
-			this.depth = depth;
-			this.evaluation = evaluation;
-		}
+	public Move getBestMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo) {
+		return search(b, new SearchLimits(new TimeManager(remainingMillis, incrementMillis, movesToGo)));
 	}
 	
-	public Move getBestMoveTimed(Board b) {
-		return null; //TODO: Implement with new time control signature, etc.
+	/* Runs the engine's search, printing a summary of it in verbose mode. */
+	private Move search(Board b, SearchLimits limits){
+		long beginTime = System.nanoTime();
+		Move bestMove = engine.search(b, limits);
+		if(verbose){
+			long millis = Math.max(1, (System.nanoTime() - beginTime) / 1000000);
+			long nodes = engine.getNodeCount();
+			System.out.println("Search took " + millis + " ms");
+			System.out.println("Positions evaluated: " + nodes + " (" + (nodes * 1000 / millis) + " per second)");
+			System.out.println("Evaluations skipped: " + engine.getEvalsSkipped());
+			System.out.println("TT usage: " + engine.getTranspositionTable().getUsagePermille() + " per mille");
+			System.out.println("Best move found: " + ((bestMove == null) ? "none, the game is over" : bestMove.toNotation()));
+		}
+		return bestMove;
 	}
-
 	
 }
-
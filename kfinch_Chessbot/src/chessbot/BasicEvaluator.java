@@ -1,5 +1,6 @@
 package chessbot;
 
+import chess_backend.Bitboards;
 import chess_backend.Board;
 
 /**
@@ -10,22 +11,22 @@ import chess_backend.Board;
  */
 public class BasicEvaluator implements Evaluator {
 	
-	//The material values of the different pieces.
+	//The material values of the different pieces. (also used by IncrementalEvaluator, which scores the same way)
 	//Numbers used copied from Prof. Danny Sleator's suggested starting values.
-	private static final int PAWN_VALUE = 100;
-	private static final int KNIGHT_VALUE = 300;
-	private static final int BISHOP_VALUE = 300;
-	private static final int ROOK_VALUE = 500;
-	private static final int QUEEN_VALUE = 900;
-	private static final int KING_VALUE = 0;
-	private static final int CASTLE_VALUE = 50; //keep using this?
+	static final int PAWN_VALUE = 100;
+	static final int KNIGHT_VALUE = 300;
+	static final int BISHOP_VALUE = 300;
+	static final int ROOK_VALUE = 500;
+	static final int QUEEN_VALUE = 900;
+	static final int KING_VALUE = 0;
+	static final int CASTLE_VALUE = 50; //keep using this?
 	
 	private static final int CHECKMATE = 1000000;
 	private static final int STALEMATE = 0;
 
-	//The positional bonuses for different pieces.
+	//The positional bonuses for different pieces, indexed by x then y, and used as is for both players.
 	//Numbers used copied from Prof. Danny Sleator's suggested starting values.
-	private static final int[][] PAWN_POS_VALUE =
+	static final int[][] PAWN_POS_VALUE =
 		{ {  0,  8,  4,  0,  0,  0,  0,  0 },
 		  {  0, 10,  8,  6,  4,  2,  0,  0 },
 		  {  0, 15, 12,  9,  6,  3,  0,  0 },
@@ -35,7 +36,7 @@ public class BasicEvaluator implements Evaluator {
 		  {  0, 10,  8,  6,  4,  2,  0,  0 },
 		  {  0,  8,  4,  0,  0,  0,  0,  0 } };
 
-	private static final int[][] KNIGHT_POS_VALUE =
+	static final int[][] KNIGHT_POS_VALUE =
 		{ {-10, -8, -8, -8, -8, -8, -8,-10 },
 		  { -5,  0,  0,  0,  0,  0,  0, -5 },
 		  { -5,  0, 10,  8,  8, 10,  0, -5 },
@@ -45,7 +46,7 @@ public class BasicEvaluator implements Evaluator {
 		  { -5,  0,  0,  0,  0,  0,  0, -5 },
 		  {-10, -8, -8, -8, -8, -8, -8,-10 } };
 
-	private static final int[][] BISHOP_POS_VALUE =
+	static final int[][] BISHOP_POS_VALUE =
 		{ { -5, -5, -5, -5, -5, -5, -5, -5 },
 		  { -5, 10,  5,  3,  3,  5, 10, -5 },
 		  { -5,  5,  3, 10, 10,  3,  5, -5 },
@@ -63,10 +64,7 @@ public class BasicEvaluator implements Evaluator {
 	 */
 	public int evaluate(Board board) {
 		int result = 0;
-		byte curr;
-		int val = 0;
 		byte turn = board.getTurn();
-		byte[][] boardArray = board.getBoard();
 
 		// Favor castled positions
 		if(board.hasCastled(turn))
@@ -74,36 +72,35 @@ public class BasicEvaluator implements Evaluator {
 		if(board.hasCastled(turn == Board.BLACK ? Board.WHITE : Board.BLACK))
 			result -= CASTLE_VALUE;
 
-		for(int x=0; x<8; x++){
-			for(int y=0; y<8; y++){
-				curr = boardArray[x][y];
-				if(Board.isEmpty(curr))
-					continue;
-				switch(Board.pieceOf(curr)){
-				case Board.PAWN:
-					val = PAWN_VALUE + PAWN_POS_VALUE[x][y];
-					break;
-				case Board.KNIGHT:
-					val = KNIGHT_VALUE + KNIGHT_POS_VALUE[x][y];
-					break;
-				case Board.BISHOP:
-					val = BISHOP_VALUE + BISHOP_POS_VALUE[x][y];
-					break;
-				case Board.ROOK:
-					val = ROOK_VALUE;
-					break;
-				case Board.QUEEN:
-					val = QUEEN_VALUE;
-					break;
-				case Board.KING:
-					val = KING_VALUE;
-					break;
-				}
-				if(Board.colorOf(curr) != turn)
-					val *= -1;
-				result += val;
-			}
+		result += evaluateSide(board, turn);
+		result -= evaluateSide(board, (byte) (1 - turn));
+		
+		return result;
+	}
+	
+	/* Sums the material and positional values of one player's pieces.
+	 * Walks the set bits of that player's piece sets rather than scanning all 64 squares.
+	 */
+	private int evaluateSide(Board board, byte color){
+		int result = 0;
+		long pieces;
+		int sq;
+		
+		for(pieces = board.getPieceSet(color, Board.PAWN); pieces != 0; pieces &= pieces - 1){
+			sq = Bitboards.lowestSquare(pieces);
+			result += PAWN_VALUE + PAWN_POS_VALUE[Bitboards.fileOf(sq)][Bitboards.rankOf(sq)];
+		}
+		for(pieces = board.getPieceSet(color, Board.KNIGHT); pieces != 0; pieces &= pieces - 1){
+			sq = Bitboards.lowestSquare(pieces);
+			result += KNIGHT_VALUE + KNIGHT_POS_VALUE[Bitboards.fileOf(sq)][Bitboards.rankOf(sq)];
+		}
+		for(pieces = board.getPieceSet(color, Board.BISHOP); pieces != 0; pieces &= pieces - 1){
+			sq = Bitboards.lowestSquare(pieces);
+			result += BISHOP_VALUE + BISHOP_POS_VALUE[Bitboards.fileOf(sq)][Bitboards.rankOf(sq)];
 		}
+		result += ROOK_VALUE * Bitboards.count(board.getPieceSet(color, Board.ROOK));
+		result += QUEEN_VALUE * Bitboards.count(board.getPieceSet(color, Board.QUEEN));
+		result += KING_VALUE * Bitboards.count(board.getPieceSet(color, Board.KING));
 		
 		return result;
 	}
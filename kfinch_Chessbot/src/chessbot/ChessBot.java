@@ -17,23 +17,33 @@ public class ChessBot implements Player{
 	private SearchTree searchTree;
 	
 	public ChessBot(){
-		evaluator = new BasicEvaluator();
+		evaluator = new IncrementalEvaluator();
 		searchTree = new ABTree(evaluator);
 		fixedDepth = 6;
 	}
 	
 	public ChessBot(int fixedDepth, boolean verbose){
-		evaluator = new BasicEvaluator();
+		evaluator = new IncrementalEvaluator();
 		searchTree = new ABTree(evaluator, verbose);
 		this.fixedDepth = fixedDepth;
 	}
+	
+	/** With more than one thread, searches in parallel with a LazySMPTree. */
+	public ChessBot(int fixedDepth, int threads, boolean verbose){
+		evaluator = new IncrementalEvaluator();
+		if(threads > 1)
+			searchTree = new LazySMPTree(evaluator, threads, TranspositionTable.DEFAULT_SIZE_MB, verbose);
+		else
+			searchTree = new ABTree(evaluator, verbose);
+		this.fixedDepth = fixedDepth;
+	}
 
 	public Move getMove(Board b) {
 		return searchTree.getBestMoveFixed(b, fixedDepth);
 	}
 
-	public Move getMoveTimed(Board b){
-		return null; //TODO: Implement
+	public Move getMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo){
+		return searchTree.getBestMoveTimed(b, remainingMillis, incrementMillis, movesToGo);
 	}
 
 
@@ -0,0 +1,370 @@
+package chessbot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import chess_backend.Board;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * ForkJoinTree.java
+ * A parallel alpha-beta search that splits the work of each node between threads, using 'Young Brothers Wait':
+ * the eldest brother, i.e. the first move of a node, is searched alone first. With good move ordering it's usually
+ * the best move, and the bound it sets is what lets the rest be pruned. Only once it's done are the younger brothers
+ * forked off as tasks to a ForkJoinPool, each searching against the best score found at the node so far,
+ * which they share and raise as they go. As soon as one of them causes a beta cutoff, the rest are cancelled.
+ *
+ * Only nodes near the top of the tree are split. The rest are searched serially by a SearchEngine
+ * (one per pool thread), all of which share one transposition table.
+ * Unlike LazySMPTree, the threads divide the tree between them rather than racing through all of it,
+ * so the result depends much less on timing.
+ * The pool's threads keep running between searches, until shutdown() is called.
+ */
+public class ForkJoinTree implements SearchTree {
+
+	//Nodes with at least this much depth left are split between threads, shallower ones are searched serially.
+	private static final int SPLIT_DEPTH = 4;
+	//Nodes this far from the top aren't split either: the serial search prunes much harder than split nodes
+	//(ex. null moves and late move reductions), which is worth more than the parallelism that deep.
+	private static final int MAX_SPLIT_PLY = 3;
+	//Once this many of a split node's moves have been ordered before it, a quiet move is searched less deeply
+	//(see SearchEngine's late move reductions).
+	private static final int LMR_MOVES = 3;
+
+	private Evaluator e;
+	private int checkmate;
+	private int stalemate;
+
+	private ForkJoinPool pool;
+	private TranspositionTable transpositionTable;
+	private ThreadLocal<SearchEngine> serialSearchers; //searches the nodes too shallow to split, one per thread
+	private List<SearchEngine> allSerialSearchers; //every SearchEngine serialSearchers has made, so they can be reset between searches
+
+	private volatile int bestMove; //packed, the best move found at the top of the tree so far
+	private volatile Split root; //the top of the tree of the current iteration
+	private volatile long hardDeadline = Long.MAX_VALUE; //the System.nanoTime() at which a timed search stops
+
+	//The switch for verbose mode, and the number of split nodes for it to print.
+	private boolean verbose;
+	private AtomicInteger splitCount;
+
+	public ForkJoinTree(Evaluator e, int threads){
+		this(e, threads, TranspositionTable.DEFAULT_SIZE_MB, false);
+	}
+
+	/**
+	 * Creates a search using a pool of the given number of threads,
+	 * sharing a transposition table of the given size in megabytes.
+	 */
+	public ForkJoinTree(Evaluator e, int threads, int hashMB, boolean verbose){
+		if(threads < 1)
+			throw new IllegalArgumentException("A search needs at least one thread, not " + threads);
+		this.e = e;
+		checkmate = e.getCheckmate();
+		stalemate = e.getStalemate();
+		pool = new ForkJoinPool(threads);
+		transpositionTable = new TranspositionTable(hashMB);
+		allSerialSearchers = new ArrayList<SearchEngine>();
+		serialSearchers = new ThreadLocal<SearchEngine>(){
+			@Override
+			protected SearchEngine initialValue(){
+				SearchEngine searcher = new SearchEngine(ForkJoinTree.this.e, transpositionTable, new AtomicBoolean());
+				synchronized(allSerialSearchers){
+					allSerialSearchers.add(searcher);
+				}
+				return searcher;
+			}
+		};
+		splitCount = new AtomicInteger();
+		this.verbose = verbose;
+	}
+
+	/** Returns the number of threads searching. */
+	public int getThreadCount(){
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Searches to the specified depth starting from the specified board position, and returns the best move found.
+	 */
+	public Move getBestMoveFixed(Board b, int depth) {
+		return search(b, depth, null);
+	}
+
+	/**
+	 * Searches as deeply as the time allows starting from the specified board position, and returns the best move found.
+	 */
+	public Move getBestMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo) {
+		return search(b, SearchLimits.MAX_DEPTH, new TimeManager(remainingMillis, incrementMillis, movesToGo));
+	}
+
+	/**
+	 * Stops the pool's threads once they're done with whatever they're doing. The tree can't search after this.
+	 */
+	public void shutdown(){
+		pool.shutdown();
+	}
+
+	/*
+	 * Does the work for getBestMoveFixed and getBestMoveTimed. time is null for a fixed depth search.
+	 * A timed search finishes at least its first iteration, and after that returns the best move found before time ran out.
+	 */
+	private Move search(Board b, int depth, TimeManager time){
+		transpositionTable.newSearch(); //entries from earlier moves are kept, but can now be replaced
+		synchronized(allSerialSearchers){
+			for(SearchEngine searcher : allSerialSearchers)
+				searcher.startSubtreeSearches();
+		}
+		splitCount.set(0);
+		bestMove = Move.NONE;
+
+		//each iteration gets its own copy, leaving the caller's board alone
+		long beginTime = System.nanoTime();
+		//search is progressively deepened, with the best move from previous iterations searched first.
+		for(int i=Math.min(2, depth); i<=depth; i++){ //a depth 1 search still gets its one iteration
+			pool.invoke(new RootTask(new Board(b), i));
+			if(root.stop.get()) //i.e. out of time
+				break;
+			if(time != null){
+				if(time.softExpired())
+					break;
+				hardDeadline = time.getHardDeadline(); //from now on there's a move to fall back on
+			}
+		}
+		hardDeadline = Long.MAX_VALUE;
+		long endTime = System.nanoTime();
+
+		if(verbose){
+			long nodes = 0;
+			synchronized(allSerialSearchers){
+				for(SearchEngine searcher : allSerialSearchers)
+					nodes += searcher.getNodeCount();
+			}
+			long millis = Math.max(1, (endTime - beginTime) / 1000000);
+			System.out.println("Search took " + millis + " ms on " + pool.getParallelism() + " threads");
+			System.out.println("Positions evaluated: " + nodes + " (" + (nodes * 1000 / millis) + " per second)");
+			System.out.println("Split nodes: " + splitCount.get());
+			System.out.println("TT usage: " + transpositionTable.getUsagePermille() + " per mille");
+		}
+		return (bestMove == Move.NONE) ? null : new Move(bestMove);
+	}
+
+	/*
+	 * Searches the position on b to the given depth. parent is the split node it's below, or null at the top.
+	 * Moves are made and unmade on b in place, so it is back in its original state when this returns.
+	 * If parent is told to stop before this is done, the score returned is meaningless and must not be used.
+	 * Once time runs out, the whole tree is told to stop.
+	 */
+	private int search(Split parent, Board b, int depth, int ply, int alpha, int beta){
+		if(ply > 0 && (depth < SPLIT_DEPTH || ply >= MAX_SPLIT_PLY)){
+			int score = serialSearchers.get().searchSubtree(b, depth, ply, alpha, beta, parent.stop, hardDeadline);
+			//the serial search watches the clock itself, but it's up to this to stop everything else
+			if(System.nanoTime() >= hardDeadline)
+				root.stop();
+			return score;
+		}
+		return new Split(parent, b, depth, ply, alpha, beta).search();
+	}
+
+	/*
+	 * A node whose moves are split between threads. The alpha bound is shared by all the threads searching its moves.
+	 * Stopping a split node also stops every split node below it.
+	 */
+	private class Split {
+
+		private Board b;
+		private int depth, ply, beta;
+		private AtomicInteger alpha;
+		private volatile int bestHere = Move.NONE; //only set while holding this's lock
+
+		//Set once the results of this node's moves are no longer needed, either because one caused a cutoff
+		//(in which case cutoff is set too) or because a node above it no longer needs this one's result.
+		private AtomicBoolean stop;
+		private volatile boolean cutoff;
+		private List<SearchTask> tasks; //guarded by this
+		private List<Split> children; //guarded by this
+
+		public Split(Split parent, Board b, int depth, int ply, int alpha, int beta){
+			this.b = b;
+			this.depth = depth;
+			this.ply = ply;
+			this.alpha = new AtomicInteger(alpha);
+			this.beta = beta;
+			stop = new AtomicBoolean();
+			tasks = new ArrayList<SearchTask>();
+			children = new ArrayList<Split>();
+			if(parent != null)
+				parent.addChild(this);
+		}
+
+		private synchronized void addChild(Split child){
+			children.add(child);
+			if(stop.get()) //in case this was stopped while the child was being made
+				child.stop();
+		}
+
+		/* Stops the search of this node, and everything below it. Locks are always taken parent first, then child. */
+		private synchronized void stop(){
+			stop.set(true);
+			for(SearchTask task : tasks)
+				task.cancel(false);
+			for(Split child : children)
+				child.stop();
+		}
+
+		/* Takes the score of one of this node's moves into account. Stops the other moves' searches on a cutoff. */
+		private synchronized void report(int move, int score){
+			if(stop.get())
+				return;
+			if(score > alpha.get()){
+				alpha.set(score);
+				bestHere = move;
+				if(ply == 0)
+					bestMove = move;
+			}
+			if(alpha.get() >= beta){
+				cutoff = true;
+				stop();
+			}
+		}
+
+		/* Searches this node, returning its score. */
+		public int search(){
+			splitCount.incrementAndGet();
+			long key = b.getKey();
+			int alphaOrig = alpha.get();
+
+			long prevEval = transpositionTable.probe(key);
+			int ttMove = TranspositionTable.moveOf(prevEval);
+			if(ply != 0 && SearchEngine.isCutoff(prevEval, depth, alphaOrig, beta)) //the top has to actually find a move
+				return TranspositionTable.scoreOf(prevEval);
+			if(ply == 0 && bestMove != Move.NONE)
+				ttMove = bestMove; //the best move of the previous iteration
+
+			//split nodes are few enough that they can each have their own list
+			MoveList moves = new MoveList(1);
+			b.generateMoves(moves, 0);
+			if(moves.size(0) == 0){ //i.e. board is in a game over position
+				if(b.inCheck(b.getTurn())) //checkmate!
+					return -checkmate;
+				else                       //stalemate!
+					return -stalemate;
+			}
+			MoveOrdering.sortByMvvLva(b, moves, 0, new int[moves.size(0)]);
+			for(int i=1; i<moves.size(0); i++) //the TT move goes first, and the rest stay in order behind it
+				if(moves.get(0, i) == ttMove)
+					for(int j=i; j>0; j--)
+						moves.swap(0, j, j-1);
+
+			//the eldest brother is searched alone, in this thread
+			int first = 0;
+			while(SearchEngine.isUnboxableRootMove(moves.get(0, first), ply))
+				first++;
+			int eldest = moves.get(0, first);
+			b.makeMove(eldest);
+			int score = -ForkJoinTree.this.search(this, b, depth-1, ply+1, -beta, -alpha.get());
+			b.unmakeMove();
+			if(stop.get())
+				return 0;
+			report(eldest, score);
+
+			//then the younger brothers are searched in parallel, each on its own copy of the board
+			if(!cutoff){
+				List<SearchTask> forked = new ArrayList<SearchTask>();
+				for(int i=first+1; i<moves.size(0); i++){
+					int m = moves.get(0, i);
+					if(SearchEngine.isUnboxableRootMove(m, ply))
+						continue;
+					Board child = new Board(b);
+					child.makeMove(m);
+					SearchTask task = new SearchTask(this, child, m, i - first);
+					synchronized(this){
+						if(stop.get())
+							break;
+						tasks.add(task);
+					}
+					forked.add(task);
+					task.fork();
+				}
+				for(SearchTask task : forked)
+					task.quietlyJoin();
+			}
+			if(stop.get() && !cutoff)
+				return 0;
+
+			int best = alpha.get();
+			int bound = (best >= beta) ? TranspositionTable.BOUND_LOWER
+					  : (best > alphaOrig) ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+			transpositionTable.store(key, depth, best, bound, bestHere);
+			return best;
+		}
+	}
+
+	/*
+	 * Searches one of a split node's younger brothers, reporting its score back to the split node.
+	 * Like the eldest brother in principal variation search, it only needs to be shown to be worse than the best
+	 * so far, which a zero width window does cheaply, and is only searched again with the full window if it isn't.
+	 */
+	private class SearchTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private Split split;
+		private Board b; //the split node's position after this task's move
+		private int move;
+		private int movesBefore; //how many of the split node's moves are ordered before this one
+
+		public SearchTask(Split split, Board b, int move, int movesBefore){
+			this.split = split;
+			this.b = b;
+			this.move = move;
+			this.movesBefore = movesBefore;
+		}
+
+		@Override
+		protected Integer compute(){
+			int alpha = split.alpha.get();
+			if(split.stop.get())
+				return 0;
+			//late quiet moves get the same reduction as in SearchEngine, and the same full depth search if they beat alpha anyway
+			int reduction = 0;
+			boolean quiet = !Move.isCapture(move) && Move.promotionOf(move) == Board.EMPTY;
+			if(split.ply > 0 && movesBefore >= LMR_MOVES && quiet && !b.inCheck(b.getTurn()))
+				reduction = Math.min(MoveOrdering.lateMoveReduction(split.depth, movesBefore), split.depth - 2);
+			int score = -search(split, b, split.depth-1-reduction, split.ply+1, -alpha-1, -alpha);
+			if(reduction > 0 && !split.stop.get() && score > alpha)
+				score = -search(split, b, split.depth-1, split.ply+1, -alpha-1, -alpha);
+			if(!split.stop.get() && score > alpha && score < split.beta)
+				score = -search(split, b, split.depth-1, split.ply+1, -split.beta, -alpha);
+			if(!split.stop.get())
+				split.report(move, score);
+			return score;
+		}
+	}
+
+	/* Searches the top of the tree to the given depth, in a pool thread. */
+	private class RootTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private Board b;
+		private int depth;
+
+		public RootTask(Board b, int depth){
+			this.b = b;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Integer compute(){
+			root = new Split(null, b, depth, 0, -Integer.MAX_VALUE, Integer.MAX_VALUE);
+			return root.search();
+		}
+	}
+
+}
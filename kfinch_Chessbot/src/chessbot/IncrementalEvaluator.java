@@ -0,0 +1,62 @@
+package chessbot;
+
+import chess_backend.Board;
+import chess_backend.PieceSquareTables;
+
+/**
+ * IncrementalEvaluator.java
+ * Scores positions exactly as BasicEvaluator does, but without adding up the pieces at every leaf.
+ * BasicEvaluator's material and positional values are put into PieceSquareTables, which the board being evaluated
+ * is told to keep sums of. The board then updates those sums as moves are made and unmade,
+ * and evaluating is just reading them off, whatever the number of pieces.
+ * Evaluating a board switches it to these tables if it isn't using them already, see Board.usePieceSquareTables.
+ */
+public class IncrementalEvaluator extends BasicEvaluator {
+
+	//BasicEvaluator's values, material included, for every piece on every square.
+	//Its evaluation doesn't change over the game, so the midgame and endgame tables are the same.
+	private static final PieceSquareTables TABLES = buildTables();
+
+	public IncrementalEvaluator(){}
+
+	/** Evaluates the material and rough positional strength of a position, the same as BasicEvaluator.
+	 *  Positive means better for the active player, negative means better for other player.
+	 */
+	@Override
+	public int evaluate(Board board) {
+		board.usePieceSquareTables(TABLES); //a no-op, except on the first position of a search
+		
+		byte turn = board.getTurn();
+		byte other = (byte) (1 - turn);
+		int result = board.getMidgameScore(turn) - board.getMidgameScore(other);
+
+		// Favor castled positions
+		if(board.hasCastled(turn))
+			result += CASTLE_VALUE;
+		if(board.hasCastled(other))
+			result -= CASTLE_VALUE;
+		
+		return result;
+	}
+
+	/* Flattens BasicEvaluator's values into tables, see PieceSquareTables.java. */
+	private static PieceSquareTables buildTables(){
+		int[] values = {0, PAWN_VALUE, KNIGHT_VALUE, BISHOP_VALUE, ROOK_VALUE, QUEEN_VALUE, KING_VALUE};
+		int[][][] positional = {null, PAWN_POS_VALUE, KNIGHT_POS_VALUE, BISHOP_POS_VALUE, null, null, null};
+		int[] table = new int[16*64];
+		for(byte color = Board.WHITE; color <= Board.BLACK; color++){
+			for(byte type = Board.PAWN; type <= Board.KING; type++){
+				for(int x=0; x<8; x++){
+					for(int y=0; y<8; y++){
+						int value = values[type];
+						if(positional[type] != null)
+							value += positional[type][x][y];
+						table[Board.makeSquare(color, type)*64 + y*8 + x] = value;
+					}
+				}
+			}
+		}
+		return new PieceSquareTables(table, table);
+	}
+
+}
@@ -0,0 +1,127 @@
+package chessbot;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import chess_backend.Board;
+import chess_backend.Move;
+
+/**
+ * LazySMPTree.java
+ * A parallel version of ABTree: several SearchEngines search the same position at once, each on its own thread,
+ * all sharing one transposition table (which is safe to share, see TranspositionTable.java).
+ * The threads don't coordinate in any other way. Whatever one of them finds goes into the table, where the others
+ * pick it up as cutoffs and move ordering, so between them they get through the tree faster than one could alone.
+ *
+ * Only the main thread's result is used. The helper threads just fill in the table, and are stopped once the
+ * main thread is done. To keep them from all searching the same nodes in the same order, every other helper starts
+ * its iterative deepening a ply deeper, and each has its own killers and history, which soon diverge.
+ */
+public class LazySMPTree implements SearchTree {
+
+	private SearchEngine[] searchers; //searchers[0] is the main thread's, the rest are the helpers'
+	private TranspositionTable transpositionTable;
+	private AtomicBoolean stop; //tells the helpers to stop
+
+	private boolean verbose;
+
+	public LazySMPTree(Evaluator e, int threads){
+		this(e, threads, TranspositionTable.DEFAULT_SIZE_MB, false);
+	}
+
+	/**
+	 * Creates a search using the given number of threads (including the calling thread),
+	 * sharing a transposition table of the given size in megabytes.
+	 */
+	public LazySMPTree(Evaluator e, int threads, int hashMB, boolean verbose){
+		if(threads < 1)
+			throw new IllegalArgumentException("A search needs at least one thread, not " + threads);
+		transpositionTable = new TranspositionTable(hashMB);
+		stop = new AtomicBoolean();
+		searchers = new SearchEngine[threads];
+		for(int i=0; i<threads; i++)
+			searchers[i] = new SearchEngine(e, transpositionTable, stop);
+		this.verbose = verbose;
+	}
+
+	/** Returns the number of threads searching. */
+	public int getThreadCount(){
+		return searchers.length;
+	}
+
+	/**
+	 * Searches to the specified depth starting from the specified board position, and returns the best move found.
+	 * The calling thread does the main search, while the helper threads search alongside it until it's done.
+	 */
+	public Move getBestMoveFixed(Board b, int depth) {
+		return search(b, new SearchLimits(depth));
+	}
+
+	/**
+	 * Searches as deeply as the time allows starting from the specified board position, and returns the best move found.
+	 * Only the main thread watches the clock, as the helpers are stopped when it finishes anyway.
+	 */
+	public Move getBestMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo) {
+		return search(b, new SearchLimits(new TimeManager(remainingMillis, incrementMillis, movesToGo)));
+	}
+
+	/* Does the work for getBestMoveFixed and getBestMoveTimed. */
+	private Move search(Board b, SearchLimits limits){
+		transpositionTable.newSearch(); //entries from earlier moves are kept, but can now be replaced
+		stop.set(false);
+
+		long beginTime = System.nanoTime();
+		Thread[] helpers = new Thread[searchers.length - 1];
+		for(int i=1; i<searchers.length; i++){
+			//helpers search a ply past the main thread, so they're still busy when it finishes
+			helpers[i-1] = new Thread(new Helper(searchers[i], b, 2 + i%2, Math.min(limits.getDepth() + 1, SearchLimits.MAX_DEPTH)),
+									  "LazySMP helper " + i);
+			helpers[i-1].setDaemon(true);
+			helpers[i-1].start();
+		}
+
+		Move bestMove = searchers[0].iterate(b, Math.min(2, limits.getDepth()), limits); //as in SearchEngine.search
+
+		stop.set(true);
+		for(Thread helper : helpers){
+			try {
+				helper.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt(); //the helpers stop on their own soon anyway
+				break;
+			}
+		}
+		long endTime = System.nanoTime();
+
+		if(verbose){
+			long nodes = 0;
+			for(SearchEngine searcher : searchers)
+				nodes += searcher.getNodeCount();
+			long millis = Math.max(1, (endTime - beginTime) / 1000000);
+			System.out.println("Search took " + millis + " ms on " + searchers.length + " threads");
+			System.out.println("Positions evaluated: " + nodes + " (" + (nodes * 1000 / millis) + " per second)");
+			System.out.println("TT usage: " + transpositionTable.getUsagePermille() + " per mille");
+			System.out.println("Best move found: " + ((bestMove == null) ? "none, the game is over" : bestMove.toNotation()));
+		}
+		return bestMove;
+	}
+
+	/* Runs one helper's search. Its result is thrown away, as it only searches to fill the transposition table. */
+	private static class Helper implements Runnable {
+
+		private SearchEngine searcher;
+		private Board b;
+		private int startDepth, depth;
+
+		public Helper(SearchEngine searcher, Board b, int startDepth, int depth){
+			this.searcher = searcher;
+			this.b = b;
+			this.startDepth = startDepth;
+			this.depth = depth;
+		}
+
+		public void run(){
+			searcher.iterate(b, startDepth, new SearchLimits(depth));
+		}
+	}
+
+}
@@ -21,6 +21,9 @@ public class MinimaxTree implements SearchTree {
 	
 	private int captureDepth;
 	
+	//Roughly how many times longer searching one ply deeper takes, without any pruning.
+	private static final int BRANCHING_GUESS = 30;
+	
 	/**
 	 * A minimax tree for searching the game tree.
 	 * @param e - The evaluator function to be used on leaf nodes.
@@ -86,6 +89,23 @@ public class MinimaxTree implements SearchTree {
 		return best;
 	}
 	
-	public Move getBestMoveTimed(Board b){return null;} //TODO: Implement
+	/**
+	 * Searches as deeply as the time allows, and then returns the best move found.
+	 * This search can't be stopped partway through, so each depth is only started if it looks like it will finish
+	 * before the hard deadline, guessing that it will take BRANCHING_GUESS times longer than the last.
+	 */
+	public Move getBestMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo){
+		TimeManager time = new TimeManager(remainingMillis, incrementMillis, movesToGo);
+		Move best = getBestMoveFixed(b, 1);
+		long lastDuration = 0;
+		for(int depth=2; !time.softExpired(); depth++){
+			long start = System.nanoTime();
+			if(start + lastDuration * BRANCHING_GUESS >= time.getHardDeadline())
+				break;
+			best = getBestMoveFixed(b, depth);
+			lastDuration = System.nanoTime() - start;
+		}
+		return best;
+	}
 	
 }
@@ -0,0 +1,82 @@
+package chessbot;
+
+import chess_backend.Bitboards;
+import chess_backend.Board;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * MoveOrdering.java
+ * Helpers the searches share for putting the moves most likely to cause a cutoff first,
+ * and for deciding how much to trust that ordering.
+ */
+final class MoveOrdering {
+
+	//How many plies less deeply to search a move, indexed by depth left and how many moves came before it.
+	//Grows with both, roughly as ln(depth)*ln(moves), as a move ordered after many others is rarely the best one.
+	private static final int[][] LATE_MOVE_REDUCTIONS = new int[64][64];
+	static {
+		for(int depth=1; depth<64; depth++)
+			for(int moves=1; moves<64; moves++)
+				LATE_MOVE_REDUCTIONS[depth][moves] = (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25);
+	}
+
+	private MoveOrdering(){}
+	
+	/**
+	 * Returns how many plies to reduce the search of a quiet move by,
+	 * given the depth left and how many moves were searched before it.
+	 */
+	static int lateMoveReduction(int depth, int movesBefore){
+		return LATE_MOVE_REDUCTIONS[Math.min(depth, 63)][Math.min(movesBefore, 63)];
+	}
+
+	/**
+	 * Returns the value of whatever the packed move captures or promotes to, by Board.PIECE_VALUES,
+	 * the same values static exchange evaluation uses.
+	 * For a move that doesn't, that's 0.
+	 */
+	static int materialGain(Board b, int move){
+		int gain = 0;
+		if((move & Move.ENPASSANT) != 0)
+			gain = Board.PIECE_VALUES[Board.PAWN];
+		else if(Move.isCapture(move)){
+			int to = Move.toSquare(move);
+			gain = Board.PIECE_VALUES[Board.pieceOf(b.getSquare(Bitboards.fileOf(to), Bitboards.rankOf(to)))];
+		}
+		byte promotion = Move.promotionOf(move);
+		if(promotion != Board.EMPTY)
+			gain += Board.PIECE_VALUES[promotion] - Board.PIECE_VALUES[Board.PAWN];
+		return gain;
+	}
+
+	/**
+	 * Most Valuable Victim - Least Valuable Attacker: ranks captures by what they take first,
+	 * then by how little the piece doing the taking is worth, so pawn takes queen comes before queen takes queen.
+	 */
+	static int mvvLva(Board b, int move){
+		int from = Move.fromSquare(move);
+		byte attacker = Board.pieceOf(b.getSquare(Bitboards.fileOf(from), Bitboards.rankOf(from)));
+		return materialGain(b, move) * 16 - attacker;
+	}
+
+	/**
+	 * Sorts the moves in the given ply's slot of moveList by MVV-LVA, best first.
+	 * scores is scratch space, with room for at least as many moves as are in the slot.
+	 */
+	static void sortByMvvLva(Board b, MoveList moveList, int ply, int[] scores){
+		int n = moveList.size(ply);
+		for(int i=0; i<n; i++)
+			scores[i] = mvvLva(b, moveList.get(ply, i));
+		//insertion sort, as the lists are short and usually nearly in order already
+		for(int i=1; i<n; i++){
+			int score = scores[i];
+			for(int j=i; j>0 && scores[j-1] < score; j--){
+				moveList.swap(ply, j, j-1);
+				scores[j] = scores[j-1];
+				scores[j-1] = score;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+package chessbot;
+
+import java.util.Arrays;
+
+import chess_backend.Board;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * MovePicker.java
+ * Hands a search the moves of each node one at a time, best guesses first, in stages:
+ *   1. the transposition table move
+ *   2. captures and queen promotes that don't lose material, most valuable victim first
+ *   3. killer moves, i.e. quiet moves that caused cutoffs in sibling nodes
+ *   4. the countermove, i.e. the quiet move that last refuted the move that led to this node
+ *   5. the remaining quiet moves, those with the best history (see below) first
+ *   6. losing captures
+ * Each stage's moves are only generated once the stages before it are used up, so a node that gets a cutoff
+ * from its TT move or a capture never generates its quiet moves at all.
+ * The TT move, killers and countermove come from other positions, so they are checked for legality, but only when picked.
+ *
+ * The search reports every quiet move that causes a cutoff with recordCutoff, which is what the killers,
+ * the countermoves and the history table are learned from. The history table scores each quiet move by
+ * its side, start and end squares, going up by depth^2 each time it causes a cutoff, so moves that keep
+ * refuting things all over the tree get tried early.
+ *
+ * One MovePicker serves a whole search, with separate state for each ply, so it should be used like:
+ *   picker.clearHistory(); //once per search
+ *   picker.init(board, ply, ttMove);
+ *   for(int m = picker.next(board, ply); m != Move.NONE; m = picker.next(board, ply)){ ... }
+ * The board must be in the same position for every call for a given ply,
+ * and the node at ply p+1 must be the result of playing the move last picked at ply p.
+ */
+public class MovePicker {
+
+	private static final int TT_MOVE = 0;
+	private static final int GENERATE_CAPTURES = 1;
+	private static final int WINNING_CAPTURES = 2;
+	private static final int KILLER_1 = 3;
+	private static final int KILLER_2 = 4;
+	private static final int COUNTERMOVE = 5;
+	private static final int GENERATE_QUIETS = 6;
+	private static final int QUIETS = 7;
+	private static final int LOSING_CAPTURES = 8;
+	private static final int DONE = 9;
+	
+	private static final int HISTORY_LIMIT = 1 << 20; //once any history score passes this, they're all halved
+
+	//the captures for ply p go in slot 2p, and the quiet moves in slot 2p+1
+	private MoveList moves;
+	private int[] scores;
+
+	//per ply state
+	private int[] stage, index, losingStart;
+	private int[] ttMove, killer1, killer2, counter;
+	private int[] current; //the move most recently picked, i.e. the one being searched
+	
+	//what's been learned over the search
+	private int[] killers; //two per ply: killers[2*ply] is the most recent
+	private int[] history; //indexed by side*4096 + from*64 + to
+	private int[] countermoves; //indexed by the start and end squares of the move being answered, from*64 + to
+
+	public MovePicker(){
+		moves = new MoveList(MoveList.MAX_PLY * 2);
+		scores = new int[MoveList.MAX_MOVES];
+		stage = new int[MoveList.MAX_PLY];
+		index = new int[MoveList.MAX_PLY];
+		losingStart = new int[MoveList.MAX_PLY];
+		ttMove = new int[MoveList.MAX_PLY];
+		killer1 = new int[MoveList.MAX_PLY];
+		killer2 = new int[MoveList.MAX_PLY];
+		counter = new int[MoveList.MAX_PLY];
+		current = new int[MoveList.MAX_PLY];
+		killers = new int[MoveList.MAX_PLY * 2];
+		history = new int[2 * 64 * 64];
+		countermoves = new int[64 * 64];
+	}
+	
+	/* Returns the number of bytes the picker's storage takes up, for SearchEngine.getMaxHeapBytes. */
+	long getSizeBytes(){
+		long ints = scores.length + stage.length + index.length + losingStart.length + ttMove.length + killer1.length
+				  + killer2.length + counter.length + current.length + killers.length + history.length + countermoves.length;
+		return moves.getSizeBytes() + ints * 4;
+	}
+	
+	/** Forgets the killers, countermoves and history learned so far, ex. at the start of a new search. */
+	public void clearHistory(){
+		Arrays.fill(killers, Move.NONE);
+		Arrays.fill(history, 0);
+		Arrays.fill(countermoves, Move.NONE);
+	}
+	
+	/**
+	 * Tells the picker that a move searched at the given ply caused a beta cutoff, after searching to the given depth.
+	 * Captures are ignored, as they're already ordered well enough by what they capture.
+	 */
+	public void recordCutoff(Board b, int ply, int move, int depth){
+		if(Move.isCapture(move) || Move.promotionOf(move) == Board.QUEEN)
+			return;
+		if(killers[2*ply] != move){
+			killers[2*ply + 1] = killers[2*ply];
+			killers[2*ply] = move;
+		}
+		if(ply > 0 && current[ply-1] != Move.NONE)
+			countermoves[current[ply-1] & 0xFFF] = move;
+		
+		int h = historyIndex(b.getTurn(), move);
+		history[h] += depth * depth;
+		if(history[h] > HISTORY_LIMIT) //keeps the scores from overflowing, and lets newer results count for more
+			for(int i=0; i<history.length; i++)
+				history[i] /= 2;
+	}
+	
+	/* The start and end squares are the low 12 bits of a packed move. */
+	private static int historyIndex(byte side, int move){
+		return side * 4096 + (move & 0xFFF);
+	}
+
+	/**
+	 * Starts picking moves for the node at the given ply. ttMove may be Move.NONE,
+	 * and doesn't have to be legal on b, as it's skipped if it isn't.
+	 */
+	public void init(Board b, int ply, int ttMove){
+		stage[ply] = TT_MOVE;
+		current[ply] = Move.NONE;
+		this.ttMove[ply] = ttMove;
+		//none of the suggested quiet moves should be tried twice
+		int k1 = killers[2*ply], k2 = killers[2*ply + 1];
+		int cm = (ply > 0 && current[ply-1] != Move.NONE) ? countermoves[current[ply-1] & 0xFFF] : Move.NONE;
+		killer1[ply] = (k1 == ttMove) ? Move.NONE : k1;
+		killer2[ply] = (k2 == ttMove) ? Move.NONE : k2;
+		counter[ply] = (cm == ttMove || cm == k1 || cm == k2) ? Move.NONE : cm;
+	}
+	
+	/** Returns the move most recently picked for the given ply, or Move.NONE if none has been yet. */
+	public int current(int ply){
+		return current[ply];
+	}
+
+	/** Returns the next legal move for the node at the given ply, or Move.NONE once there are no more. */
+	public int next(Board b, int ply){
+		current[ply] = pick(b, ply);
+		return current[ply];
+	}
+	
+	/* Does the actual work for next. */
+	private int pick(Board b, int ply){
+		int capSlot = ply * 2, quietSlot = ply * 2 + 1;
+		while(true){
+			switch(stage[ply]){
+			case TT_MOVE:
+				stage[ply] = GENERATE_CAPTURES;
+				if(ttMove[ply] != Move.NONE && b.isLegalMove(ttMove[ply]))
+					return ttMove[ply];
+				ttMove[ply] = Move.NONE; //so nothing later gets skipped for matching it
+				break;
+
+			case GENERATE_CAPTURES:
+				b.generateCaptures(moves, capSlot);
+				losingStart[ply] = sortCaptures(b, capSlot);
+				index[ply] = 0;
+				stage[ply] = WINNING_CAPTURES;
+				break;
+
+			case WINNING_CAPTURES:
+				while(index[ply] < losingStart[ply]){
+					int m = moves.get(capSlot, index[ply]++);
+					if(m != ttMove[ply])
+						return m;
+				}
+				stage[ply] = KILLER_1;
+				break;
+
+			case KILLER_1:
+				stage[ply] = KILLER_2;
+				if(killer1[ply] != Move.NONE && b.isLegalMove(killer1[ply]))
+					return killer1[ply];
+				killer1[ply] = Move.NONE;
+				break;
+
+			case KILLER_2:
+				stage[ply] = COUNTERMOVE;
+				if(killer2[ply] != Move.NONE && b.isLegalMove(killer2[ply]))
+					return killer2[ply];
+				killer2[ply] = Move.NONE;
+				break;
+
+			case COUNTERMOVE:
+				stage[ply] = GENERATE_QUIETS;
+				if(counter[ply] != Move.NONE && b.isLegalMove(counter[ply]))
+					return counter[ply];
+				counter[ply] = Move.NONE;
+				break;
+
+			case GENERATE_QUIETS:
+				b.generateQuiets(moves, quietSlot);
+				index[ply] = 0;
+				stage[ply] = QUIETS;
+				break;
+
+			case QUIETS:
+				while(index[ply] < moves.size(quietSlot)){
+					pickBestQuiet(b, quietSlot, index[ply]);
+					int m = moves.get(quietSlot, index[ply]++);
+					if(m != ttMove[ply] && m != killer1[ply] && m != killer2[ply] && m != counter[ply])
+						return m;
+				}
+				index[ply] = losingStart[ply];
+				stage[ply] = LOSING_CAPTURES;
+				break;
+
+			case LOSING_CAPTURES:
+				while(index[ply] < moves.size(capSlot)){
+					int m = moves.get(capSlot, index[ply]++);
+					if(m != ttMove[ply])
+						return m;
+				}
+				stage[ply] = DONE;
+				break;
+
+			default:
+				return Move.NONE;
+			}
+		}
+	}
+
+	/* Swaps the quiet move with the best history score from 'start' on into 'start'.
+	 * Picking one at a time rather than sorting up front wastes no work on the moves a cutoff means are never tried.
+	 */
+	private void pickBestQuiet(Board b, int slot, int start){
+		byte side = b.getTurn();
+		int best = start;
+		int bestScore = history[historyIndex(side, moves.get(slot, start))];
+		for(int i=start+1; i<moves.size(slot); i++){
+			int score = history[historyIndex(side, moves.get(slot, i))];
+			if(score > bestScore){
+				best = i;
+				bestScore = score;
+			}
+		}
+		moves.swap(slot, start, best);
+	}
+
+	/* Sorts the captures in the given slot by MVV-LVA, best first, with the losing ones moved to the end.
+	 * A capture counts as losing if static exchange evaluation (see Board.see) says it loses material.
+	 * Returns the index of the first losing capture.
+	 */
+	private int sortCaptures(Board b, int slot){
+		MoveOrdering.sortByMvvLva(b, moves, slot, scores);
+		int n = moves.size(slot);
+		int winning = 0;
+		for(int i=0; i<n; i++){
+			if(b.see(moves.get(slot, i)) >= 0){
+				//moving it up one at a time, rather than swapping it up, keeps both groups in order
+				for(int j=i; j>winning; j--)
+					moves.swap(slot, j, j-1);
+				winning++;
+			}
+		}
+		return winning;
+	}
+
+}
@@ -0,0 +1,103 @@
+package chessbot;
+
+import java.util.Arrays;
+
+import chess_backend.Board;
+
+/**
+ * PawnHashTable.java
+ * A fixed size cache of pawn structure evaluations, keyed by Board.getPawnKey().
+ * Pawns move far less often than anything else, so most positions a search reaches share their pawns with one
+ * it has already seen, and the doubled, isolated, backward and passed pawn terms only need working out once each.
+ * Along with the score, each entry keeps the passed pawns it found, for evaluation terms that also depend on
+ * the other pieces and so can't be cached (see TaperedEvaluator).
+ *
+ * Entries are stored in parallel primitive arrays, one slot per entry, and a new entry simply replaces the old one.
+ * Unlike TranspositionTable this isn't safe to share between threads, so each searching thread has its own.
+ * A position without pawns has a key of 0, which an empty slot also matches, correctly, as its score is 0 too.
+ */
+public class PawnHashTable {
+
+	public static final int DEFAULT_SIZE_KB = 512;
+
+	private long[] keys;
+	private int[] midgame, endgame; //pawn structure scores, white's minus black's
+	private long[] passed; //passed pawns, two per slot: passed[2*slot + color]
+	private int slotMask; //number of slots - 1
+
+	//Stats, for checking the hit rate.
+	private long probes, hits;
+
+	public PawnHashTable(){
+		this(DEFAULT_SIZE_KB);
+	}
+
+	/** Creates a table taking up (at most) the given number of kilobytes. */
+	public PawnHashTable(int sizeKB){
+		//each slot is 2 ints and 3 longs, i.e. 32 bytes, and the number of slots is rounded down to a power of 2
+		long slots = Math.max(1, Math.min(1 << 24, sizeKB * 1024L / 32));
+		int slotCount = Integer.highestOneBit((int) slots);
+		keys = new long[slotCount];
+		midgame = new int[slotCount];
+		endgame = new int[slotCount];
+		passed = new long[slotCount * 2];
+		slotMask = slotCount - 1;
+	}
+
+	/** Returns the number of bytes the table takes up. */
+	public long getSizeBytes(){
+		return keys.length * 32L;
+	}
+
+	/** Returns the slot holding the given pawn key, or -1 if it isn't stored. */
+	public int probe(long pawnKey){
+		probes++;
+		int slot = (int) pawnKey & slotMask;
+		if(keys[slot] != pawnKey)
+			return -1;
+		hits++;
+		return slot;
+	}
+
+	/** Stores an evaluation of the pawns with the given key, replacing whatever shared its slot, and returns the slot. */
+	public int store(long pawnKey, int midgameScore, int endgameScore, long whitePassed, long blackPassed){
+		int slot = (int) pawnKey & slotMask;
+		keys[slot] = pawnKey;
+		midgame[slot] = midgameScore;
+		endgame[slot] = endgameScore;
+		passed[2*slot + Board.WHITE] = whitePassed;
+		passed[2*slot + Board.BLACK] = blackPassed;
+		return slot;
+	}
+
+	/** Returns the midgame pawn structure score stored in a slot, white's minus black's. */
+	public int getMidgame(int slot){
+		return midgame[slot];
+	}
+
+	/** Returns the endgame pawn structure score stored in a slot, white's minus black's. */
+	public int getEndgame(int slot){
+		return endgame[slot];
+	}
+
+	/** Returns a bitboard of the given player's passed pawns stored in a slot. */
+	public long getPassedPawns(int slot, byte color){
+		return passed[2*slot + color];
+	}
+
+	/** Returns the per mille of probes since the table was created (or cleared) that found their key. */
+	public int getHitRatePermille(){
+		return (probes == 0) ? 0 : (int) (hits * 1000 / probes);
+	}
+
+	/** Empties the table and its stats. */
+	public void clear(){
+		Arrays.fill(keys, 0);
+		Arrays.fill(midgame, 0);
+		Arrays.fill(endgame, 0);
+		Arrays.fill(passed, 0);
+		probes = 0;
+		hits = 0;
+	}
+
+}
@@ -0,0 +1,589 @@
+package chessbot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import chess_backend.Board;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * SearchEngine.java
+ * The bot's search: an iteratively deepened alpha-beta (principal variation) search with a transposition table,
+ * quiescence search, and the pruning and move ordering described where each is used below.
+ * Everything that searches for the bot's moves runs on this: ABTree and the parallel SearchTrees for headless play,
+ * and ChessBotWorker for the Swing frontend, so each improvement to it reaches all of them.
+ *
+ * A search runs until the SearchLimits it was given are reached (depth, nodes and/or time), or until stop() is called,
+ * ex. from another thread. Either way it returns the best move found, which is always at least the result of
+ * the first iteration. Progress is reported to any SearchListeners as it goes.
+ */
+public class SearchEngine {
+	
+	private int bestMove; //packed, the best move found at the top of the tree so far, or Move.NONE
+	private Evaluator e;
+	private int checkmate;
+	private int stalemate;
+	
+	//The board the search makes and unmakes its moves on, a copy of the one it was given.
+	private Board board;
+	
+	//Who gets told about the search's progress.
+	private List<SearchListener> listeners;
+	
+	//Stats about the last search.
+	private long posEvalCount;
+	private long evalsSkipped;
+
+	//Keeps a store of previously evaluated board positions so as to not redundantly search the same board state repeatedly.
+	private TranspositionTable transpositionTable;
+	
+	//Reusable per-ply storage for the moves generated at each node of the search.
+	private MoveList moveList;
+	private int[] moveScores; //scratch space for sorting a ply's moves
+	private MovePicker movePicker; //hands out the moves of each main search node, in order
+	
+	//Set from outside (ex. by another thread) to tell the search to stop. It is only read every so many nodes,
+	//and once it has been seen, aborted is set and the search unwinds without using or storing any more results.
+	private AtomicBoolean stop;
+	private boolean aborted;
+	private static final int STOP_POLL_MASK = 1023; //the stop flag is checked every 1024 nodes
+	//The System.nanoTime() at which a timed search stops, and the node count at which a node limited one does,
+	//checked along with the stop flag.
+	private long hardDeadline = Long.MAX_VALUE;
+	private long nodeLimit = Long.MAX_VALUE;
+	
+	private boolean aspirationWindows = true; //see aspirationSearch
+	
+	//In quiescence search, a capture is skipped if even winning what it takes plus this much couldn't reach alpha.
+	private static final int DELTA_MARGIN = 200;
+	
+	//Near the leaves of the main search, a capture that static exchange evaluation says loses
+	//more than this per ply of depth left is skipped.
+	private static final int SEE_PRUNE_DEPTH = 3;
+	private static final int SEE_PRUNE_MARGIN = 100;
+	
+	//Null move pruning: the side to move passes, and the opponent gets a search this many plies shallower than usual
+	//(more when there's plenty of depth left). If passing still fails high, a real move almost certainly would too.
+	private static final int NULL_MOVE_REDUCTION = 2;
+	private static final int NULL_MOVE_DEEP_REDUCTION = 3;
+	private static final int NULL_MOVE_DEEP_DEPTH = 7; //the deeper reduction is used from this depth on
+	//From this depth on, a null move fail high is only trusted once a reduced search without null moves agrees,
+	//which catches most of the zugzwang positions where passing really would be the best move.
+	private static final int NULL_MOVE_VERIFY_DEPTH = 6;
+	
+	//Each iteration of the deepening first searches a window this wide either side of the last iteration's score.
+	//When the score falls outside it the window is widened 4x on that side, and given up on past the max.
+	private static final int ASPIRATION_WINDOW = 50;
+	private static final int ASPIRATION_MAX = 1000;
+	
+	//Late move reductions: once this many moves of a node have been searched, the quiet moves after them are
+	//searched less deeply (by MoveOrdering.lateMoveReduction), as long as there's at least this much depth left.
+	private static final int LMR_MOVES = 3;
+	private static final int LMR_DEPTH = 3;
+	
+	//Futility pruning: with this little depth left, if the static evaluation is so far below alpha that even
+	//the margin for that depth wouldn't reach it, quiet moves aren't searched at all.
+	private static final int FUTILITY_DEPTH = 3;
+	private static final int[] FUTILITY_MARGIN = {0, 200, 300, 500}; //indexed by depth
+	//Reverse futility pruning: with this little depth left, a node whose static evaluation beats beta
+	//by this much per ply of depth is assumed to fail high without searching it.
+	private static final int REVERSE_FUTILITY_DEPTH = 3;
+	private static final int REVERSE_FUTILITY_MARGIN = 120;
+	
+	//What getMaxHeapBytes allows on top of the arrays it counts: object headers, the board's own fields, the stats,
+	//and the principal variation handed to listeners after each iteration. Far more than all of it takes in practice.
+	private static final int OBJECT_OVERHEAD_BYTES = 16 * 1024;
+	
+	/** Creates a search engine with a transposition table of the default size. */
+	public SearchEngine(Evaluator e){
+		this(e, new TranspositionTable());
+	}
+	
+	/**
+	 * Creates a search engine using the given transposition table.
+	 * Passing the same table to each engine created over a game lets what was learned on earlier moves carry over.
+	 */
+	public SearchEngine(Evaluator e, TranspositionTable transpositionTable){
+		this(e, transpositionTable, new AtomicBoolean());
+	}
+	
+	/*
+	 * For engines that share their transposition table and stop flag with others, see LazySMPTree and ForkJoinTree.
+	 */
+	SearchEngine(Evaluator e, TranspositionTable transpositionTable, AtomicBoolean stop){
+		this.e = e;
+		checkmate = e.getCheckmate();
+		stalemate = e.getStalemate();
+		this.transpositionTable = transpositionTable;
+		this.stop = stop;
+		//everything a search works with is allocated here, once, so searching itself allocates nothing per position
+		board = new Board();
+		board.reserveScratch(MoveList.MAX_PLY);
+		moveList = new MoveList();
+		moveScores = new int[MoveList.MAX_MOVES];
+		movePicker = new MovePicker();
+		listeners = new ArrayList<SearchListener>();
+	}
+	
+	/**
+	 * Creates a search engine that never takes up more than the given number of megabytes of heap (see getMaxHeapBytes),
+	 * giving whatever its search stacks don't need to its own transposition table.
+	 * Many engines can be run in one JVM this way without the garbage collector ever having to step in mid search.
+	 */
+	public SearchEngine(Evaluator e, int memoryMB){
+		this(e, new TranspositionTable(0));
+		long tableBytes = memoryMB * 1024L * 1024L - getMaxHeapBytes() + transpositionTable.getSizeBytes();
+		if(tableBytes < 1024 * 1024)
+			throw new IllegalArgumentException("A search needs more than " + memoryMB + "MB, at least "
+											   + ((getMaxHeapBytes() >> 20) + 2) + "MB");
+		transpositionTable = new TranspositionTable((int) (tableBytes >> 20)); //rounds down, so stays in the budget
+	}
+	
+	/**
+	 * Returns the most heap the engine can ever take up, in bytes, its transposition table included.
+	 * All of it is allocated up front: a search only reuses it, so this is the footprint from creation on,
+	 * and searching puts no pressure on the garbage collector.
+	 * Doesn't include the evaluator, or listeners, which are the caller's. Engines sharing a table count it each time.
+	 */
+	public long getMaxHeapBytes(){
+		return transpositionTable.getSizeBytes() + moveList.getSizeBytes() + moveScores.length * 4L
+			 + movePicker.getSizeBytes() + board.getScratchSizeBytes() + OBJECT_OVERHEAD_BYTES;
+	}
+	
+	/** Adds a listener to be told about the progress of every search from now on. */
+	public void addListener(SearchListener listener){
+		listeners.add(listener);
+	}
+	
+	/** Removes a listener added with addListener. */
+	public void removeListener(SearchListener listener){
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Searches starting from the specified board position until the given limits are reached or stop() is called,
+	 * and returns the best move found, or null if there are no legal moves. Listeners are called from the thread
+	 * doing the search.
+	 */
+	public Move search(Board b, SearchLimits limits){
+		transpositionTable.newSearch(); //entries from earlier moves are kept, but can now be replaced
+		//depth 1 is too shallow to be worth deepening from, but a depth 1 search still gets its one iteration
+		return iterate(b, Math.min(2, limits.getDepth()), limits);
+	}
+	
+	/**
+	 * Tells the search in progress to stop as soon as it can, which is within a few thousand positions.
+	 * Safe to call from any thread. The search still returns the best move it found.
+	 * Called before a search has started, that search stops as soon as it can instead, so there's no race
+	 * between starting a search on one thread and stopping it on another. It stays stopped until clearStop().
+	 */
+	public void stop(){
+		stop.set(true);
+	}
+	
+	/** Takes back a stop(), so the engine can search again. */
+	public void clearStop(){
+		stop.set(false);
+	}
+	
+	/**
+	 * Turns the aspiration windows of later iterations on or off (they're on by default).
+	 * With them off, every iteration searches the full window, which is slower, but finds the same move and score.
+	 */
+	public void setAspirationWindows(boolean aspirationWindows){
+		this.aspirationWindows = aspirationWindows;
+	}
+	
+	/** Returns the transposition table the engine uses. */
+	public TranspositionTable getTranspositionTable(){
+		return transpositionTable;
+	}
+	
+	/*
+	 * The iterative deepening behind search, searching from startDepth up to the depth limit,
+	 * or until the stop flag is set or another limit is reached, in which case the best move found before that is returned.
+	 * That's the best move of the last full iteration, unless a move searched since then already proved better.
+	 * Time and node limits only apply once the first iteration is finished, but the stop flag can cut even that short,
+	 * so if no move was searched at all, the best move the table has for the position is returned, or failing that
+	 * the first legal one. Returns null only if there are no legal moves.
+	 * Leaves it to the caller to tell the transposition table that a new search has started.
+	 */
+	Move iterate(Board b, int startDepth, SearchLimits limits){
+		posEvalCount = 0;
+		evalsSkipped = 0;
+		aborted = false;
+		bestMove = Move.NONE;
+		movePicker.clearHistory();
+		TimeManager time = limits.getTime();
+		
+		//the search makes and unmakes moves on its own copy, leaving the caller's board alone
+		board.setState(b);
+		
+		long beginTime = System.nanoTime();
+		//search is progressively deepened, with the best move from previous iterations searched first.
+		int score = 0;
+		for(int i=startDepth; i<=limits.getDepth() && !aborted; i++){
+			score = (i > startDepth && aspirationWindows) ? aspirationSearch(board, i, score)
+					: treeSearchRecurse(board, i, 0, -Integer.MAX_VALUE, Integer.MAX_VALUE, true);
+			if(aborted)
+				break;
+			if(!listeners.isEmpty()){
+				List<Move> pv = principalVariation(board, i);
+				long millis = (System.nanoTime() - beginTime) / 1000000;
+				for(SearchListener listener : listeners)
+					listener.iterationComplete(i, score, pv, posEvalCount, millis);
+			}
+			if(time != null){
+				if(time.softExpired())
+					break;
+				hardDeadline = time.getHardDeadline(); //from now on there's a move to fall back on
+			}
+			if(limits.getNodes() > 0){
+				if(posEvalCount >= limits.getNodes())
+					break;
+				nodeLimit = limits.getNodes();
+			}
+		}
+		hardDeadline = Long.MAX_VALUE;
+		nodeLimit = Long.MAX_VALUE;
+		if(bestMove == Move.NONE) //stopped before even one move was searched
+			bestMove = fallbackMove(board);
+		return (bestMove == Move.NONE) ? null : new Move(bestMove);
+	}
+	
+	/* Returns a move to play on b without searching it: the table's best move if it has a usable one,
+	 * or else the first legal move. Move.NONE if there are no legal moves.
+	 */
+	private int fallbackMove(Board b){
+		int ttMove = TranspositionTable.moveOf(transpositionTable.probe(b.getKey()));
+		if(ttMove != Move.NONE && Move.isBoxable(ttMove) && b.isLegalMove(ttMove))
+			return ttMove;
+		b.generateMoves(moveList, 0);
+		for(int i=0; i<moveList.size(0); i++)
+			if(!isUnboxableRootMove(moveList.get(0, i), 0))
+				return moveList.get(0, i);
+		return Move.NONE;
+	}
+	
+	/* Follows the best moves stored in the transposition table from the top of the tree, up to the given number of moves.
+	 * The table may have lost some of them, so this can be shorter than the depth searched, but never empty.
+	 */
+	private List<Move> principalVariation(Board b, int depth){
+		List<Move> pv = new ArrayList<Move>();
+		pv.add(new Move(bestMove));
+		b.makeMove(bestMove);
+		int made = 1;
+		while(pv.size() < depth){
+			int m = TranspositionTable.moveOf(transpositionTable.probe(b.getKey()));
+			if(m == Move.NONE || !Move.isBoxable(m) || !b.isLegalMove(m))
+				break;
+			pv.add(new Move(m));
+			b.makeMove(m);
+			made++;
+		}
+		for(int i=0; i<made; i++)
+			b.unmakeMove();
+		return pv;
+	}
+	
+	/** Returns the number of positions searched by the last search. */
+	public long getNodeCount(){
+		return posEvalCount;
+	}
+	
+	/** Returns the number of positions the last search skipped thanks to the transposition table. */
+	public long getEvalsSkipped(){
+		return evalsSkipped;
+	}
+	
+	/* Gets ready for a new round of searchSubtree calls, forgetting the stats and move ordering history of the last. */
+	void startSubtreeSearches(){
+		posEvalCount = 0;
+		evalsSkipped = 0;
+		movePicker.clearHistory();
+	}
+	
+	/*
+	 * Searches the subtree below one node of a bigger search (see ForkJoinTree), which b is the position of.
+	 * The search stops early once the given flag is set or the given System.nanoTime() deadline passes,
+	 * in which case the score returned is meaningless.
+	 * ply must be more than 0, as this never sets bestMove.
+	 */
+	int searchSubtree(Board b, int depth, int ply, int alpha, int beta, AtomicBoolean stop, long deadline){
+		this.stop = stop;
+		hardDeadline = deadline;
+		aborted = false;
+		return treeSearchRecurse(b, depth, ply, alpha, beta, true);
+	}
+	
+	/* Counts a searched position, checking every so often whether the search has been told to stop or is out of time
+	 * (or nodes).
+	 * Counting nodes keeps the checks cheap, as looking at the clock at every node would cost more than the node.
+	 * Returns true if it has, in which case the position shouldn't be searched.
+	 */
+	private boolean countNode(){
+		posEvalCount++;
+		if((posEvalCount & STOP_POLL_MASK) == 0
+				&& (stop.get() || System.nanoTime() >= hardDeadline || posEvalCount >= nodeLimit))
+			aborted = true;
+		return aborted;
+	}
+	
+	/*
+	 * Searches the top of the tree to the given depth, starting with a narrow window around guess, the score of
+	 * the last iteration. Scores rarely change much between iterations, and a narrow window prunes far more.
+	 * If the true score turns out to be outside the window, the search is repeated with a wider one.
+	 */
+	private int aspirationSearch(Board b, int depth, int guess){
+		if(Math.abs(guess) >= checkmate / 2) //mate scores jump around too much between iterations to guess at
+			return treeSearchRecurse(b, depth, 0, -Integer.MAX_VALUE, Integer.MAX_VALUE, true);
+		int delta = ASPIRATION_WINDOW;
+		int alpha = guess - delta, beta = guess + delta;
+		while(true){
+			int score = treeSearchRecurse(b, depth, 0, alpha, beta, true);
+			if(aborted || (score > alpha && score < beta))
+				return score;
+			delta *= 4;
+			if(delta > ASPIRATION_MAX)
+				return treeSearchRecurse(b, depth, 0, -Integer.MAX_VALUE, Integer.MAX_VALUE, true);
+			if(score <= alpha)
+				alpha = guess - delta;
+			else
+				beta = guess + delta;
+		}
+	}
+	
+	/*
+	 * Returns true if the given transposition table entry settles the score of a position searched to the given depth
+	 * with the given window, in which case the score is the entry's. That takes an entry from a search at least as deep,
+	 * and while an exact score is always enough, a bound only is if it's already outside the window.
+	 * Shared with ForkJoinTree's split nodes.
+	 */
+	static boolean isCutoff(long entry, int depth, int alpha, int beta){
+		if(entry == 0 || TranspositionTable.depthOf(entry) < depth)
+			return false;
+		int score = TranspositionTable.scoreOf(entry);
+		int bound = TranspositionTable.boundOf(entry);
+		return bound == TranspositionTable.BOUND_EXACT
+			|| (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+			|| (bound == TranspositionTable.BOUND_UPPER && score <= alpha);
+	}
+	
+	/*
+	 * Returns true for the moves not searched at the top of the tree, which are the rook and bishop promotes:
+	 * the result has to be returned as a Move, which can't hold them, and queen promotes beat them anyway.
+	 * Shared with ForkJoinTree's split nodes.
+	 */
+	static boolean isUnboxableRootMove(int move, int ply){
+		return ply == 0 && !Move.isBoxable(move);
+	}
+	
+	/*
+	 * Recursive helper for getBestMoveFixed. Performs an alpha-beta pruned minimax tree search.
+	 * Optimizes search time via a transposition table, and by searching every move after the first with a zero width window,
+	 * which can only say whether it beats the best so far, but says so quickly (principal variation search).
+	 * Moves are made and unmade on b in place, so it is back in its original state when this returns.
+	 * ply is the distance from the top of the tree, which isn't always the depth searched so far, as null moves skip some.
+	 * allowNull is false when a null move can't be tried here, ex. right after another one.
+	 * Modifies bestMove as a side effect, telling the listeners when it does.
+	 * If the search is aborted, the score returned is meaningless and must not be used.
+	 */
+	private int treeSearchRecurse(Board b, int depth, int ply, int alpha, int beta, boolean allowNull){
+		
+		//The end of the main search hands over to the quiescence search, which doesn't use the transposition table:
+		//there are far too many quiescence nodes, and they're cheap enough to just search again.
+		if(depth == 0)
+			return quiesce(b, alpha, beta, ply);
+		
+		if(countNode())
+			return 0;
+		long key = b.getKey();
+		long prevEval = transpositionTable.probe(key);
+		int ttMove = TranspositionTable.moveOf(prevEval); //Move.NONE if there's no entry
+		
+		//an earlier search of this position may settle it, except at the top, which has to actually find a move,
+		//even if the table kept this position from an earlier move
+		if(ply != 0 && isCutoff(prevEval, depth, alpha, beta)){
+			evalsSkipped++;
+			return TranspositionTable.scoreOf(prevEval);
+		}
+		
+		int curr;
+		int alphaOrig = alpha;
+		int bestHere = Move.NONE; //best move found at this node
+		int moveCount = 0;
+		int searched = 0; //moves actually searched, i.e. not counting the skipped ones
+		
+		//Search the best move from the last time this position was searched first: it's probably still the best,
+		//and finding the best move first usually results in much more AB pruning.
+		//At the top that's the best move of the previous iteration, which also produces more sensible behavior
+		//when the search must be stopped early due to running out of time.
+		if(ply == 0 && bestMove != Move.NONE)
+			ttMove = bestMove;
+		movePicker.init(b, ply, ttMove);
+		
+		boolean inCheck = b.inCheck(b.getTurn());
+		int staticEval = inCheck ? 0 : e.evaluate(b); //not used when in check, where it means little
+		boolean pvNode = (long) beta - alpha > 1; //i.e. the exact score matters here, not just whether it beats a bound
+		
+		//Reverse futility pruning: near the leaves, a position that is already well over beta without moving
+		//is very unlikely to fall below it within a ply or two.
+		if(ply > 0 && !pvNode && depth <= REVERSE_FUTILITY_DEPTH && !inCheck && Math.abs(beta) < checkmate / 2
+				&& staticEval - REVERSE_FUTILITY_MARGIN * depth >= beta)
+			return beta;
+		
+		//Null move pruning: give the opponent a free move, and if a reduced search still fails high, so will this node.
+		//Not when in check, where passing would leave the king capturable, and not with only pawns left,
+		//where zugzwang is common enough that passing is often better than any real move.
+		if(allowNull && ply > 0 && depth >= 2 && !inCheck && Math.abs(beta) < checkmate / 2
+				&& b.hasNonPawnMaterial(b.getTurn()) && staticEval >= beta){
+			int reduction = (depth >= NULL_MOVE_DEEP_DEPTH) ? NULL_MOVE_DEEP_REDUCTION : NULL_MOVE_REDUCTION;
+			int nullDepth = Math.max(0, depth - 1 - reduction);
+			b.makeNullMove();
+			int nullScore = -treeSearchRecurse(b, nullDepth, ply+1, -beta, -beta+1, false);
+			b.unmakeNullMove();
+			if(aborted)
+				return 0;
+			if(nullScore >= beta){
+				boolean verified = true;
+				if(depth >= NULL_MOVE_VERIFY_DEPTH){
+					verified = treeSearchRecurse(b, depth - reduction, ply, beta-1, beta, false) >= beta;
+					if(aborted)
+						return 0;
+					movePicker.init(b, ply, ttMove); //the verification search used this ply's picker too
+				}
+				if(verified){
+					transpositionTable.store(key, depth, beta, TranspositionTable.BOUND_LOWER, Move.NONE);
+					return beta; //not nullScore, which could be a mate score that passing doesn't actually prove
+				}
+			}
+		}
+		
+		//Futility pruning: near the leaves, a position too far below alpha to be saved by a quiet move can skip them.
+		boolean futile = ply > 0 && depth <= FUTILITY_DEPTH && !inCheck && Math.abs(alpha) < checkmate / 2
+				&& staticEval + FUTILITY_MARGIN[depth] <= alpha;
+		
+		//Recursively searches all possible moves from this position, looking for the best one.
+		//The picker hands them over best guesses first, and only generates each kind of move once it's needed.
+		for(int m = movePicker.next(b, ply); m != Move.NONE; m = movePicker.next(b, ply)){
+			moveCount++;
+			if(isUnboxableRootMove(m, ply))
+				continue;
+			//a badly losing capture this close to the leaves is very unlikely to be worth a look
+			if(ply > 0 && depth <= SEE_PRUNE_DEPTH && !inCheck && moveCount > 1 && Move.isCapture(m)
+					&& b.see(m) < -SEE_PRUNE_MARGIN * depth)
+				continue;
+			boolean quiet = !Move.isCapture(m) && Move.promotionOf(m) == Board.EMPTY;
+			b.makeMove(m);
+			boolean givesCheck = b.inCheck(b.getTurn());
+			if(futile && quiet && !givesCheck && searched > 0){
+				b.unmakeMove();
+				continue;
+			}
+			if(searched == 0)
+				curr = -treeSearchRecurse(b, depth-1, ply+1, -beta, -alpha, true);
+			else{
+				//Late quiet moves are rarely any good when the ordering is, so they're searched less deeply,
+				//and only searched again to the full depth if the reduced search says they beat alpha after all.
+				int reduction = 0;
+				if(ply > 0 && depth >= LMR_DEPTH && searched >= LMR_MOVES && quiet && !inCheck && !givesCheck)
+					reduction = Math.min(MoveOrdering.lateMoveReduction(depth, searched), depth - 2);
+				//with good move ordering the first move is usually the best, so the rest only need to be shown to be worse,
+				//which a zero width window does cheaply. One that turns out better is searched again to find its real score.
+				curr = -treeSearchRecurse(b, depth-1-reduction, ply+1, -alpha-1, -alpha, true);
+				if(curr > alpha && reduction > 0)
+					curr = -treeSearchRecurse(b, depth-1, ply+1, -alpha-1, -alpha, true);
+				if(curr > alpha && curr < beta)
+					curr = -treeSearchRecurse(b, depth-1, ply+1, -beta, -alpha, true);
+			}
+			b.unmakeMove();
+			if(aborted)
+				return 0;
+			searched++;
+			if(curr > alpha){
+				alpha = curr;
+				bestHere = m;
+				if(ply == 0){
+					bestMove = m;
+					for(int i=0; i<listeners.size(); i++)
+						listeners.get(i).bestMoveChanged(new Move(m), depth);
+				}
+			}
+			if(alpha >= beta){
+				movePicker.recordCutoff(b, ply, m, depth); //so it gets tried early elsewhere too
+				break;
+			}
+		}
+		
+		if(moveCount == 0){ //i.e. board is in a game over position
+			if(inCheck) //checkmate!
+				return -checkmate;
+			else 				  //stalemate!
+				return -stalemate;
+		}
+		
+		//Add the new (or deeper) evaluation to the transposition table.
+		int bound = (alpha >= beta) ? TranspositionTable.BOUND_LOWER
+				  : (alpha > alphaOrig) ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+		transpositionTable.store(key, depth, alpha, bound, bestHere);
+		
+		return alpha;
+	}
+	
+	/*
+	 * Quiescence search, used in place of a static evaluation once treeSearchRecurse runs out of depth.
+	 * Only captures and queen promotes are searched, until the position is quiet, so the search doesn't stop
+	 * in the middle of an exchange and misjudge it (the horizon effect).
+	 * The side to move can 'stand pat', declining every capture and taking the static evaluation instead.
+	 * The exception is when it is in check, where standing pat isn't an option, so every way out of check is searched.
+	 * Captures are searched most valuable victim first, and ones that can't possibly raise alpha are skipped (delta pruning),
+	 * as are ones that static exchange evaluation says lose material.
+	 */
+	private int quiesce(Board b, int alpha, int beta, int ply){
+		if(countNode())
+			return 0;
+		
+		boolean inCheck = b.inCheck(b.getTurn());
+		int standPat = 0;
+		if(ply >= MoveList.MAX_PLY - 1) //out of room for more moves, which should never really happen
+			return e.evaluate(b);
+		if(inCheck){
+			b.generateMoves(moveList, ply);
+			if(moveList.size(ply) == 0) //checkmate!
+				return -checkmate;
+		}
+		else{
+			standPat = e.evaluate(b);
+			if(standPat >= beta)
+				return standPat;
+			if(standPat > alpha)
+				alpha = standPat;
+			b.generateCaptures(moveList, ply);
+		}
+		
+		MoveOrdering.sortByMvvLva(b, moveList, ply, moveScores);
+		for(int i=0; i<moveList.size(ply); i++){
+			int m = moveList.get(ply, i);
+			//the moves are sorted by what they win, so once one can't raise alpha none of the rest can either
+			if(!inCheck && standPat + MoveOrdering.materialGain(b, m) + DELTA_MARGIN <= alpha)
+				break;
+			if(!inCheck && b.see(m) < 0)
+				continue;
+			b.makeMove(m);
+			int curr = -quiesce(b, -beta, -alpha, ply+1);
+			b.unmakeMove();
+			if(aborted)
+				return 0;
+			if(curr > alpha){
+				alpha = curr;
+				if(alpha >= beta)
+					break;
+			}
+		}
+		return alpha;
+	}
+	
+}
+
@@ -0,0 +1,55 @@
+package chessbot;
+
+import chess_backend.MoveList;
+
+/**
+ * SearchLimits.java
+ * How far a SearchEngine search may go: a maximum depth, a number of nodes (positions searched),
+ * and a TimeManager's deadlines, any of which ends the search once reached.
+ * The node and time limits are only checked once the first iteration is done, so a search always has a move to return.
+ */
+public class SearchLimits {
+
+	//How deep a search can go when no depth is given, which it should never get near in practice.
+	public static final int MAX_DEPTH = MoveList.MAX_PLY / 2;
+
+	private int depth;
+	private long nodes; //0 for no limit
+	private TimeManager time; //null for no limit
+
+	/** Limits a search to the given depth. */
+	public SearchLimits(int depth){
+		this(depth, 0, null);
+	}
+
+	/** Limits a search to the deadlines of the given TimeManager. */
+	public SearchLimits(TimeManager time){
+		this(MAX_DEPTH, 0, time);
+	}
+
+	/**
+	 * Limits a search to the given depth, number of nodes (0 for no limit), and TimeManager's deadlines (null for no limit).
+	 */
+	public SearchLimits(int depth, long nodes, TimeManager time){
+		if(depth < 1 || depth > MAX_DEPTH)
+			throw new IllegalArgumentException("Search depth must be between 1 and " + MAX_DEPTH + ", not " + depth);
+		if(nodes < 0)
+			throw new IllegalArgumentException("Node limit can't be negative: " + nodes);
+		this.depth = depth;
+		this.nodes = nodes;
+		this.time = time;
+	}
+
+	public int getDepth(){
+		return depth;
+	}
+
+	public long getNodes(){
+		return nodes;
+	}
+
+	public TimeManager getTime(){
+		return time;
+	}
+
+}
@@ -0,0 +1,18 @@
+package chessbot;
+
+import java.util.List;
+
+import chess_backend.Move;
+
+/**
+ * SearchListener.java
+ * Told about the progress of a SearchEngine's searches, ex. to show the move the bot is thinking about.
+ * Methods are called from the thread doing the search, so they should be quick, and hand anything slow off elsewhere.
+ */
+public interface SearchListener {
+	//Called whenever a new best move is found at the top of the tree, while searching to the given depth.
+	public void bestMoveChanged(Move best, int depth);
+	//Called after each completed iteration, with its score (for the side to move), principal variation
+	//(starting with the best move), and the nodes searched and milliseconds taken by the search so far.
+	public void iterationComplete(int depth, int score, List<Move> pv, long nodes, long millis);
+}
@@ -5,5 +5,6 @@ import chess_backend.Move;
 
 public interface SearchTree {
 	public Move getBestMoveFixed(Board b, int depth);
-	public Move getBestMoveTimed(Board b); //TODO: Change signature once I know best way to implement
+	//Times are in milliseconds. movesToGo is the number of moves until the next time control, or 0 if there isn't one.
+	public Move getBestMoveTimed(Board b, long remainingMillis, long incrementMillis, int movesToGo);
 }
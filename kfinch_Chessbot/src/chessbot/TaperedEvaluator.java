@@ -0,0 +1,359 @@
+package chessbot;
+
+import chess_backend.Bitboards;
+import chess_backend.Board;
+import chess_backend.PieceSquareTables;
+
+/**
+ * TaperedEvaluator.java
+ * Scores positions by material and piece placement, with separate midgame and endgame values for every piece type
+ * on every square. The two scores are blended by how much material is left (the game phase), so ex. the king
+ * is kept tucked away behind its pawns while the queens are on, and marched to the center once they're gone.
+ *
+ * The values are put into PieceSquareTables, which the board being evaluated keeps running sums of (see Board.java),
+ * so evaluating costs the same however many pieces there are: reading off the sums and counting the pieces left.
+ * Evaluating a board switches it to these tables if it isn't using them already, see Board.usePieceSquareTables.
+ * Midgame positional values are based on Tomasz Michniewski's 'Simplified Evaluation Function', as are the pawn
+ * and king endgame ones. The knight, bishop, rook and queen endgame values and the material values are Ronald
+ * Friederich's PeSTO.
+ *
+ * On top of that the pawn structure is scored: doubled, isolated, backward and passed pawns. That takes a look at
+ * every pawn, but depends on nothing but the pawns, so it's cached in a PawnHashTable (one per thread, as the evaluator
+ * is shared between the threads of a parallel search) and only worked out again once the pawns change.
+ */
+public class TaperedEvaluator implements Evaluator {
+
+	private static final int CHECKMATE = 1000000;
+	private static final int STALEMATE = 0;
+	
+	//Material values, indexed by piece type.
+	private static final int[] MIDGAME_VALUE = {0,  82, 337, 365, 477, 1025, 0};
+	private static final int[] ENDGAME_VALUE = {0,  94, 281, 297, 512,  936, 0};
+	
+	//How much each piece type left on the board counts toward the game phase. Full phase is the starting material,
+	//and anything over it (ex. after promoting) is treated as full.
+	private static final int[] PHASE_WEIGHT = {0, 0, 1, 1, 2, 4, 0};
+	private static final int MAX_PHASE = 24;
+	
+	//The positional values of each piece type, as seen from white's side: the first row is the 8th rank,
+	//and the last row the 1st, as on a printed board. Black's are the same values flipped vertically.
+	private static final int[] PAWN_MIDGAME =
+		{   0,  0,  0,  0,  0,  0,  0,  0,
+		   50, 50, 50, 50, 50, 50, 50, 50,
+		   10, 10, 20, 30, 30, 20, 10, 10,
+		    5,  5, 10, 25, 25, 10,  5,  5,
+		    0,  0,  0, 20, 20,  0,  0,  0,
+		    5, -5,-10,  0,  0,-10, -5,  5,
+		    5, 10, 10,-20,-20, 10, 10,  5,
+		    0,  0,  0,  0,  0,  0,  0,  0 };
+	
+	//In the endgame, a pawn is worth more the closer it is to promoting.
+	private static final int[] PAWN_ENDGAME =
+		{   0,  0,  0,  0,  0,  0,  0,  0,
+		   80, 80, 80, 80, 80, 80, 80, 80,
+		   50, 50, 50, 50, 50, 50, 50, 50,
+		   30, 30, 30, 30, 30, 30, 30, 30,
+		   15, 15, 15, 15, 15, 15, 15, 15,
+		    5,  5,  5,  5,  5,  5,  5,  5,
+		    0,  0,  0,  0,  0,  0,  0,  0,
+		    0,  0,  0,  0,  0,  0,  0,  0 };
+	
+	private static final int[] KNIGHT_MIDGAME =
+		{ -50,-40,-30,-30,-30,-30,-40,-50,
+		  -40,-20,  0,  0,  0,  0,-20,-40,
+		  -30,  0, 10, 15, 15, 10,  0,-30,
+		  -30,  5, 15, 20, 20, 15,  5,-30,
+		  -30,  0, 15, 20, 20, 15,  0,-30,
+		  -30,  5, 10, 15, 15, 10,  5,-30,
+		  -40,-20,  0,  5,  5,  0,-20,-40,
+		  -50,-40,-30,-30,-30,-30,-40,-50 };
+	
+	//In the endgame, a knight still wants the center, and the corners are worse than ever.
+	private static final int[] KNIGHT_ENDGAME =
+		{ -58,-38,-13,-28,-31,-27,-63,-99,
+		  -25, -8,-25, -2, -9,-25,-24,-52,
+		  -24,-20, 10,  9, -1, -9,-19,-41,
+		  -17,  3, 22, 22, 22, 11,  8,-18,
+		  -18, -6, 16, 25, 16, 17,  4,-18,
+		  -23, -3, -1, 15, 10, -3,-20,-22,
+		  -42,-20,-10, -5, -2,-20,-23,-44,
+		  -29,-51,-23,-15,-22,-18,-50,-64 };
+	
+	private static final int[] BISHOP_MIDGAME =
+		{ -20,-10,-10,-10,-10,-10,-10,-20,
+		  -10,  0,  0,  0,  0,  0,  0,-10,
+		  -10,  0,  5, 10, 10,  5,  0,-10,
+		  -10,  5,  5, 10, 10,  5,  5,-10,
+		  -10,  0, 10, 10, 10, 10,  0,-10,
+		  -10, 10, 10, 10, 10, 10, 10,-10,
+		  -10,  5,  0,  0,  0,  0,  5,-10,
+		  -20,-10,-10,-10,-10,-10,-10,-20 };
+	
+	//In the endgame, a bishop still wants the center, but the edges cost it much less.
+	private static final int[] BISHOP_ENDGAME =
+		{ -14,-21,-11, -8, -7, -9,-17,-24,
+		   -8, -4,  7,-12, -3,-13, -4,-14,
+		    2, -8,  0, -1, -2,  6,  0,  4,
+		   -3,  9, 12,  9, 14, 10,  3,  2,
+		   -6,  3, 13, 19,  7, 10, -3, -9,
+		  -12, -3,  8, 10, 13,  3, -7,-15,
+		  -14,-18, -7, -1,  4, -9,-15,-27,
+		  -23, -9,-23, -5, -9,-16, -5,-17 };
+	
+	private static final int[] ROOK_MIDGAME =
+		{   0,  0,  0,  0,  0,  0,  0,  0,
+		    5, 10, 10, 10, 10, 10, 10,  5,
+		   -5,  0,  0,  0,  0,  0,  0, -5,
+		   -5,  0,  0,  0,  0,  0,  0, -5,
+		   -5,  0,  0,  0,  0,  0,  0, -5,
+		   -5,  0,  0,  0,  0,  0,  0, -5,
+		   -5,  0,  0,  0,  0,  0,  0, -5,
+		    0,  0,  0,  5,  5,  0,  0,  0 };
+	
+	//In the endgame, a rook is best on the far ranks, behind enemy pawns and cutting off the king.
+	private static final int[] ROOK_ENDGAME =
+		{  13, 10, 18, 15, 12, 12,  8,  5,
+		   11, 13, 13, 11, -3,  3,  8,  3,
+		    7,  7,  7,  5,  4, -3, -5, -3,
+		    4,  3, 13,  1,  2,  1, -1,  2,
+		    3,  5,  8,  4, -5, -6, -8,-11,
+		   -4,  0, -5, -1, -7,-12, -8,-16,
+		   -6, -6,  0,  2, -9, -9,-11, -3,
+		   -9,  2,  3, -1, -5,-13,  4,-20 };
+	
+	private static final int[] QUEEN_MIDGAME =
+		{ -20,-10,-10, -5, -5,-10,-10,-20,
+		  -10,  0,  0,  0,  0,  0,  0,-10,
+		  -10,  0,  5,  5,  5,  5,  0,-10,
+		   -5,  0,  5,  5,  5,  5,  0, -5,
+		    0,  0,  5,  5,  5,  5,  0, -5,
+		  -10,  5,  5,  5,  5,  5,  0,-10,
+		  -10,  0,  5,  0,  0,  0,  0,-10,
+		  -20,-10,-10, -5, -5,-10,-10,-20 };
+	
+	//In the endgame, the queen wants the center and the enemy's half of the board, not its own back ranks.
+	private static final int[] QUEEN_ENDGAME =
+		{  -9, 22, 22, 27, 27, 19, 10, 20,
+		  -17, 20, 32, 41, 58, 25, 30,  0,
+		  -20,  6,  9, 49, 47, 35, 19,  9,
+		    3, 22, 24, 45, 57, 40, 57, 36,
+		  -18, 28, 19, 47, 31, 34, 39, 23,
+		  -16,-27, 15,  6,  9, 17, 10,  5,
+		  -22,-23,-30,-16,-16,-23,-36,-32,
+		  -33,-28,-22,-43, -5,-32,-20,-41 };
+	
+	private static final int[] KING_MIDGAME =
+		{ -30,-40,-40,-50,-50,-40,-40,-30,
+		  -30,-40,-40,-50,-50,-40,-40,-30,
+		  -30,-40,-40,-50,-50,-40,-40,-30,
+		  -30,-40,-40,-50,-50,-40,-40,-30,
+		  -20,-30,-30,-40,-40,-30,-30,-20,
+		  -10,-20,-20,-20,-20,-20,-20,-10,
+		   20, 20,  0,  0,  0,  0, 20, 20,
+		   20, 30, 10,  0,  0, 10, 30, 20 };
+	
+	private static final int[] KING_ENDGAME =
+		{ -50,-40,-30,-20,-20,-30,-40,-50,
+		  -30,-20,-10,  0,  0,-10,-20,-30,
+		  -30,-10, 20, 30, 30, 20,-10,-30,
+		  -30,-10, 30, 40, 40, 30,-10,-30,
+		  -30,-10, 30, 40, 40, 30,-10,-30,
+		  -30,-10, 20, 30, 30, 20,-10,-30,
+		  -30,-30,  0,  0,  0,  0,-30,-30,
+		  -50,-30,-30,-30,-30,-30,-30,-50 };
+	
+	//Indexed by piece type.
+	private static final int[][] MIDGAME_TABLES =
+		{null, PAWN_MIDGAME, KNIGHT_MIDGAME, BISHOP_MIDGAME, ROOK_MIDGAME, QUEEN_MIDGAME, KING_MIDGAME};
+	private static final int[][] ENDGAME_TABLES =
+		{null, PAWN_ENDGAME, KNIGHT_ENDGAME, BISHOP_ENDGAME, ROOK_ENDGAME, QUEEN_ENDGAME, KING_ENDGAME};
+	
+	//Pawn structure terms, midgame then endgame. The passed pawn bonuses are indexed by rank, counted from the
+	//pawn's own side, and a passed pawn whose way forward isn't blocked gets the free passer bonus on top.
+	private static final int DOUBLED_MIDGAME = -10, DOUBLED_ENDGAME = -20; //per pawn past the first on a file
+	private static final int ISOLATED_MIDGAME = -10, ISOLATED_ENDGAME = -15;
+	private static final int BACKWARD_MIDGAME = -8, BACKWARD_ENDGAME = -10;
+	private static final int[] PASSED_MIDGAME = {0, 0, 5, 10, 20, 35, 60, 0};
+	private static final int[] PASSED_ENDGAME = {0, 0, 10, 20, 40, 70, 120, 0};
+	private static final int[] FREE_PASSER_ENDGAME = {0, 0, 5, 10, 15, 25, 40, 0};
+	
+	//Masks for the pawn structure terms.
+	private static final long[] FILES = new long[8];
+	private static final long[] ADJACENT_FILES = new long[8];
+	//The squares in front of a pawn of the given color on the given square, on its own file and the ones beside it.
+	//With no enemy pawns there (or its own in front of it), the pawn is passed.
+	private static final long[][] PASSED_SPAN = new long[2][64];
+	//The squares beside and behind a pawn, where its own pawns could defend it now or by advancing.
+	private static final long[][] SUPPORT_SPAN = new long[2][64];
+	
+	static {
+		for(int f=0; f<8; f++)
+			FILES[f] = Bitboards.FILE_A << f;
+		for(int f=0; f<8; f++)
+			ADJACENT_FILES[f] = (f > 0 ? FILES[f-1] : 0) | (f < 7 ? FILES[f+1] : 0);
+		for(int sq=0; sq<64; sq++){
+			int f = Bitboards.fileOf(sq), r = Bitboards.rankOf(sq);
+			for(int other=0; other<64; other++){
+				int otherRank = Bitboards.rankOf(other);
+				long bit = 1L << other;
+				if(((FILES[f] | ADJACENT_FILES[f]) & bit) != 0){
+					if(otherRank > r) PASSED_SPAN[Board.WHITE][sq] |= bit;
+					if(otherRank < r) PASSED_SPAN[Board.BLACK][sq] |= bit;
+				}
+				if((ADJACENT_FILES[f] & bit) != 0){
+					if(otherRank <= r) SUPPORT_SPAN[Board.WHITE][sq] |= bit;
+					if(otherRank >= r) SUPPORT_SPAN[Board.BLACK][sq] |= bit;
+				}
+			}
+		}
+	}
+	
+	//All of the above, material included, for every piece of either color on every square.
+	private static final PieceSquareTables TABLES = new PieceSquareTables(flatten(MIDGAME_VALUE, MIDGAME_TABLES),
+																		  flatten(ENDGAME_VALUE, ENDGAME_TABLES));
+	
+	//Each thread's cache of pawn structure scores.
+	private ThreadLocal<PawnHashTable> pawnTables;
+	
+	public TaperedEvaluator(){
+		this(PawnHashTable.DEFAULT_SIZE_KB);
+	}
+	
+	/** Creates an evaluator whose pawn hash tables take up the given number of kilobytes, per searching thread. */
+	public TaperedEvaluator(final int pawnHashKB){
+		pawnTables = new ThreadLocal<PawnHashTable>(){
+			@Override
+			protected PawnHashTable initialValue(){
+				return new PawnHashTable(pawnHashKB);
+			}
+		};
+	}
+	
+	/** Returns the calling thread's pawn hash table, ex. to check its hit rate. */
+	public PawnHashTable getPawnHashTable(){
+		return pawnTables.get();
+	}
+	
+	/** Evaluates the material and positional strength of a position, weighted by the game phase.
+	 *  Positive means better for the active player, negative means better for other player.
+	 */
+	public int evaluate(Board board) {
+		board.usePieceSquareTables(TABLES); //a no-op, except on the first position of a search
+		
+		byte turn = board.getTurn();
+		byte other = (byte) (1 - turn);
+		int midgame = board.getMidgameScore(turn) - board.getMidgameScore(other);
+		int endgame = board.getEndgameScore(turn) - board.getEndgameScore(other);
+		
+		PawnHashTable pawns = pawnTables.get();
+		int slot = pawns.probe(board.getPawnKey());
+		if(slot < 0)
+			slot = evaluatePawns(board, pawns);
+		//scores in the table are white's minus black's
+		int pawnMidgame = pawns.getMidgame(slot);
+		int pawnEndgame = pawns.getEndgame(slot) + freePassers(board, pawns.getPassedPawns(slot, Board.WHITE), Board.WHITE)
+											   - freePassers(board, pawns.getPassedPawns(slot, Board.BLACK), Board.BLACK);
+		if(turn == Board.WHITE){
+			midgame += pawnMidgame;
+			endgame += pawnEndgame;
+		}
+		else{
+			midgame -= pawnMidgame;
+			endgame -= pawnEndgame;
+		}
+		
+		int phase = phase(board);
+		return (midgame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+	}
+	
+	/**
+	 * Returns how far from the endgame a position is, from MAX_PHASE with all the pieces on
+	 * down to 0 with only kings and pawns left.
+	 */
+	public static int phase(Board board){
+		int phase = 0;
+		for(byte type = Board.KNIGHT; type <= Board.QUEEN; type++)
+			phase += PHASE_WEIGHT[type] * (Bitboards.count(board.getPieceSet(Board.WHITE, type))
+										 + Bitboards.count(board.getPieceSet(Board.BLACK, type)));
+		return Math.min(phase, MAX_PHASE);
+	}
+	
+	/* Scores the pawn structure of a position from scratch, and stores it in the pawn hash table, returning its slot. */
+	private static int evaluatePawns(Board board, PawnHashTable pawns){
+		int midgame = 0, endgame = 0; //white's minus black's, so black's terms are subtracted
+		long whitePassed = 0, blackPassed = 0;
+		for(byte color = Board.WHITE; color <= Board.BLACK; color++){
+			int sign = (color == Board.WHITE) ? 1 : -1;
+			long own = board.getPieceSet(color, Board.PAWN);
+			long enemy = board.getPieceSet((byte) (1 - color), Board.PAWN);
+			for(int f=0; f<8; f++){
+				int onFile = Bitboards.count(own & FILES[f]);
+				if(onFile > 1){
+					midgame += sign * DOUBLED_MIDGAME * (onFile - 1);
+					endgame += sign * DOUBLED_ENDGAME * (onFile - 1);
+				}
+			}
+			for(long left = own; left != 0; left &= left - 1){
+				int sq = Bitboards.lowestSquare(left);
+				int f = Bitboards.fileOf(sq);
+				int rank = (color == Board.WHITE) ? Bitboards.rankOf(sq) : 7 - Bitboards.rankOf(sq);
+				int stop = (color == Board.WHITE) ? sq + 8 : sq - 8; //pawns never stand on the last rank, so this is on the board
+				if((own & ADJACENT_FILES[f]) == 0){
+					midgame += sign * ISOLATED_MIDGAME;
+					endgame += sign * ISOLATED_ENDGAME;
+				}
+				//can't be defended by its own pawns, and can't advance without being taken
+				else if((own & SUPPORT_SPAN[color][sq]) == 0 && (Bitboards.PAWN_ATTACKS[color][stop] & enemy) != 0){
+					midgame += sign * BACKWARD_MIDGAME;
+					endgame += sign * BACKWARD_ENDGAME;
+				}
+				if((enemy & PASSED_SPAN[color][sq]) == 0 && (own & PASSED_SPAN[color][sq] & FILES[f]) == 0){
+					if(color == Board.WHITE)
+						whitePassed |= 1L << sq;
+					else
+						blackPassed |= 1L << sq;
+					midgame += sign * PASSED_MIDGAME[rank];
+					endgame += sign * PASSED_ENDGAME[rank];
+				}
+			}
+		}
+		return pawns.store(board.getPawnKey(), midgame, endgame, whitePassed, blackPassed);
+	}
+	
+	/* Sums the free passer bonuses of the given passed pawns, i.e. of the ones with nothing on the square in front.
+	 * Unlike the rest of the pawn structure this depends on the other pieces, so it isn't cached.
+	 */
+	private static int freePassers(Board board, long passed, byte color){
+		int bonus = 0;
+		long occupied = board.getOccupied();
+		for(; passed != 0; passed &= passed - 1){
+			int sq = Bitboards.lowestSquare(passed);
+			int stop = (color == Board.WHITE) ? sq + 8 : sq - 8;
+			if((occupied & (1L << stop)) == 0)
+				bonus += FREE_PASSER_ENDGAME[(color == Board.WHITE) ? Bitboards.rankOf(sq) : 7 - Bitboards.rankOf(sq)];
+		}
+		return bonus;
+	}
+	
+	public int getCheckmate(){
+		return CHECKMATE;
+	}
+	
+	public int getStalemate(){
+		return STALEMATE;
+	}
+	
+	/* Builds one of PieceSquareTables' flattened tables from material values and positional tables laid out as above. */
+	private static int[] flatten(int[] values, int[][] tables){
+		int[] flat = new int[16*64];
+		for(byte type = Board.PAWN; type <= Board.KING; type++){
+			for(int sq=0; sq<64; sq++){
+				//the printed layout starts at a8, so white's square is flipped vertically to find its entry, and black's isn't
+				flat[Board.makeSquare(Board.WHITE, type)*64 + sq] = values[type] + tables[type][sq ^ 56];
+				flat[Board.makeSquare(Board.BLACK, type)*64 + sq] = values[type] + tables[type][sq];
+			}
+		}
+		return flat;
+	}
+	
+}
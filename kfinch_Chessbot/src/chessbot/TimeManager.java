@@ -0,0 +1,58 @@
+package chessbot;
+
+/**
+ * TimeManager.java
+ * Decides how long a search can take when playing on a clock, given the time left, the increment,
+ * and the number of moves until the next time control. The clock starts when the TimeManager is created.
+ *
+ * There are two deadlines. Past the soft deadline, no new iteration of the iterative deepening is started,
+ * as each takes a few times longer than the last, so one started that late probably wouldn't finish anyway.
+ * Past the hard deadline, the search is stopped even in the middle of an iteration. The hard deadline is
+ * never more than a fraction of the time left, so one unlucky search can't lose the game on time.
+ */
+public class TimeManager {
+
+	//With no moves to go given (i.e. the rest of the game is on this clock), the time left is budgeted as if this many were.
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+	//Kept back from the clock for everything besides the search itself, ex. making the move.
+	private static final long OVERHEAD_MILLIS = 30;
+
+	private long start; //all System.nanoTime() values
+	private long softDeadline;
+	private long hardDeadline;
+
+	/**
+	 * Budgets a search given the time left on the clock, the time added after each move,
+	 * and the moves left until the next time control (0 if there isn't one), all times in milliseconds.
+	 */
+	public TimeManager(long remainingMillis, long incrementMillis, int movesToGo){
+		start = System.nanoTime();
+		long usable = Math.max(1, remainingMillis - OVERHEAD_MILLIS);
+		int moves = (movesToGo > 0) ? Math.min(movesToGo, DEFAULT_MOVES_TO_GO) : DEFAULT_MOVES_TO_GO;
+		long target = Math.min(usable / moves + incrementMillis * 3 / 4, usable);
+		long hard = Math.min(target * 3, (moves == 1) ? usable : usable / 2);
+		softDeadline = start + Math.max(1, target / 2) * 1000000L;
+		hardDeadline = start + Math.max(1, hard) * 1000000L;
+	}
+
+	/** Returns the System.nanoTime() after which no new search iteration should be started. */
+	public long getSoftDeadline(){
+		return softDeadline;
+	}
+
+	/** Returns the System.nanoTime() after which the search should stop, even mid-iteration. */
+	public long getHardDeadline(){
+		return hardDeadline;
+	}
+
+	/** Returns true once the soft deadline has passed. */
+	public boolean softExpired(){
+		return System.nanoTime() >= softDeadline;
+	}
+
+	/** Returns the milliseconds since the clock started. */
+	public long getElapsedMillis(){
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+}
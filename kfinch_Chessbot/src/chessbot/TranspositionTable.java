@@ -0,0 +1,152 @@
+package chessbot;
+
+import java.util.Arrays;
+
+/**
+ * TranspositionTable.java
+ * A fixed size hash table of previously searched positions, backed by a single long[].
+ * Its memory use is set once, when it is created, and never grows no matter how long it is used,
+ * so it can be kept for a whole game instead of being thrown away after every move.
+ *
+ * The table is split into buckets of two entries, each entry being two longs: a check value and the data.
+ * The data packs everything known about the position (see below), and the check value is the position's key
+ * xor'd with the data. A probe only trusts an entry if xor'ing its two halves gives back the key, which
+ * catches both positions that merely share a bucket and entries torn by two threads writing at once.
+ *
+ * The first entry of each bucket is depth preferred: it is only replaced by a deeper search of some other
+ * position, or once it is left over from an earlier search. The second entry takes whatever the first turns away.
+ */
+public class TranspositionTable {
+
+	public static final int DEFAULT_SIZE_MB = 64;
+
+	//Bound types, telling how a stored score relates to the position's true score.
+	public static final int BOUND_NONE = 0;  //no entry
+	public static final int BOUND_UPPER = 1; //every move failed low, the true score is at most this
+	public static final int BOUND_LOWER = 2; //some move failed high, the true score is at least this
+	public static final int BOUND_EXACT = 3;
+
+	/* Data layout:
+	 *   bits 0-18   best move, packed (see Move.java), or Move.NONE
+	 *   bits 19-20  bound type
+	 *   bits 21-28  depth searched
+	 *   bits 29-36  age, i.e. which search stored the entry
+	 *   bits 37-63  score, signed
+	 * A bound type of BOUND_NONE is never stored, so data of 0 means 'no entry'.
+	 */
+	private static final int BOUND_SHIFT = 19;
+	private static final int DEPTH_SHIFT = 21;
+	private static final int AGE_SHIFT = 29;
+	private static final int SCORE_SHIFT = 37;
+	private static final int MAX_SCORE = (1 << 26) - 1; //scores past this (i.e. infinite bounds) are clamped to it
+
+	private long[] table;
+	private int bucketMask; //number of buckets - 1
+	private int age;
+
+	public TranspositionTable(){
+		this(DEFAULT_SIZE_MB);
+	}
+
+	/** Creates a table taking up (at most) the given number of megabytes. */
+	public TranspositionTable(int sizeMB){
+		//each bucket is 4 longs, i.e. 32 bytes, and the number of buckets is rounded down to a power of 2
+		long buckets = Math.max(1, Math.min(1 << 26, sizeMB * 1024L * 1024L / 32));
+		int bucketCount = Integer.highestOneBit((int) buckets);
+		table = new long[bucketCount * 4];
+		bucketMask = bucketCount - 1;
+	}
+
+	/** Returns the number of bytes the table takes up. */
+	public long getSizeBytes(){
+		return table.length * 8L;
+	}
+
+	/**
+	 * Marks the start of a new search. Entries from earlier searches are still used,
+	 * but any of them can now be replaced.
+	 */
+	public void newSearch(){
+		age = (age + 1) & 0xFF;
+	}
+
+	/** Empties the table, ex. for a new game. */
+	public void clear(){
+		Arrays.fill(table, 0);
+		age = 0;
+	}
+
+	/**
+	 * Looks up the position with the given key (see Board.getKey()).
+	 * Returns the entry's data (read it with the static methods below), or 0 if the position isn't stored.
+	 */
+	public long probe(long key){
+		int index = (int) (key & bucketMask) * 4;
+		for(int i=index; i<index+4; i+=2){
+			long data = table[i + 1];
+			if((table[i] ^ data) == key && data != 0)
+				return data;
+		}
+		return 0;
+	}
+
+	/** Stores what a search found about the position with the given key. move may be Move.NONE. */
+	public void store(long key, int depth, int score, int bound, int move){
+		int index = (int) (key & bucketMask) * 4;
+		long oldData = table[index + 1];
+		boolean sameKey = (table[index] ^ oldData) == key;
+		//replace the depth preferred entry if it's for the same position, is stale, or was searched less deeply
+		if(!sameKey && ageOf(oldData) == age && depthOf(oldData) > depth){
+			index += 2; //otherwise the always replace entry gets it
+			oldData = table[index + 1];
+			sameKey = (table[index] ^ oldData) == key;
+		}
+		if(move == 0 && sameKey) //don't lose a previously found best move just because this search had none
+			move = moveOf(oldData);
+
+		long data = move
+				  | ((long) bound << BOUND_SHIFT)
+				  | ((long) Math.min(depth, 255) << DEPTH_SHIFT)
+				  | ((long) age << AGE_SHIFT)
+				  | ((long) Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score)) << SCORE_SHIFT);
+		table[index] = key ^ data;
+		table[index + 1] = data;
+	}
+
+	/** Returns the per mille of the depth preferred entries that were stored by the current search. */
+	public int getUsagePermille(){
+		int samples = Math.min(1000, bucketMask + 1);
+		int used = 0;
+		for(int i=0; i<samples; i++){
+			long data = table[i*4 + 1];
+			if(data != 0 && ageOf(data) == age)
+				used++;
+		}
+		return used * 1000 / samples;
+	}
+
+	/** Returns the packed best move of an entry, or Move.NONE. */
+	public static int moveOf(long data){
+		return (int) (data & ((1 << BOUND_SHIFT) - 1));
+	}
+
+	/** Returns the bound type of an entry. */
+	public static int boundOf(long data){
+		return (int) (data >>> BOUND_SHIFT) & 3;
+	}
+
+	/** Returns the depth an entry was searched to. */
+	public static int depthOf(long data){
+		return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/** Returns the score of an entry. */
+	public static int scoreOf(long data){
+		return (int) (data >> SCORE_SHIFT); //arithmetic shift, so the sign comes back
+	}
+
+	private static int ageOf(long data){
+		return (int) (data >>> AGE_SHIFT) & 0xFF;
+	}
+
+}
@@ -0,0 +1,24 @@
+package chessbot;
+
+import java.util.List;
+
+import chess_backend.Move;
+
+/**
+ * VerboseSearchListener.java
+ * Prints a line to the console for each iteration of a search, for the bots' verbose mode.
+ */
+public class VerboseSearchListener implements SearchListener {
+
+	public void bestMoveChanged(Move best, int depth) {}
+
+	public void iterationComplete(int depth, int score, List<Move> pv, long nodes, long millis) {
+		StringBuilder line = new StringBuilder();
+		line.append("Depth ").append(depth).append(": score ").append(score);
+		line.append(", ").append(nodes).append(" positions in ").append(millis).append(" ms, pv");
+		for(Move m : pv)
+			line.append(' ').append(m.toNotation());
+		System.out.println(line);
+	}
+
+}
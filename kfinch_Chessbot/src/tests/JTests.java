@@ -2,10 +2,32 @@ package tests;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.*;
 
+import chess_backend.Bitboards;
 import chess_backend.Board;
 import chess_backend.Coordinate;
+import chess_backend.Move;
+import chess_backend.MoveList;
+import chessbot.ABTree;
+import chessbot.BasicEvaluator;
+import chessbot.ForkJoinTree;
+import chessbot.IncrementalEvaluator;
+import chessbot.LazySMPTree;
+import chessbot.MovePicker;
+import chessbot.PawnHashTable;
+import chessbot.SearchEngine;
+import chessbot.SearchLimits;
+import chessbot.SearchListener;
+import chessbot.SearchTree;
+import chessbot.TaperedEvaluator;
+import chessbot.TimeManager;
+import chessbot.TranspositionTable;
 
 public class JTests {
 
@@ -26,5 +48,583 @@ public class JTests {
 		assertEquals("null bad char",null,Board.notationToCoord("y7"));
 		assertEquals("null bad number",null,Board.notationToCoord("a9"));
 	}
+	
+	@Test
+	public void bitboardsMatchSquaresTest(){
+		Board b = new Board();
+		b.makeMove(new Move(4,1,4,3,false)); //e2 e4
+		b.makeMove(new Move(3,6,3,4,false)); //d7 d5
+		b.makeMove(new Move(4,3,3,4,true));  //e4 d5
+		for(int x=0; x<8; x++){
+			for(int y=0; y<8; y++){
+				byte square = b.getSquare(x, y);
+				boolean occupied = (b.getOccupied() & Bitboards.bit(x, y)) != 0;
+				assertEquals("occupancy at " + x + "," + y, !Board.isEmpty(square), occupied);
+				if(!Board.isEmpty(square))
+					assertTrue("piece set at " + x + "," + y,
+							(b.getPieceSet(Board.colorOf(square), Board.pieceOf(square)) & Bitboards.bit(x, y)) != 0);
+			}
+		}
+		assertEquals("white pieces", 16, Bitboards.count(b.getColorSet(Board.WHITE)));
+		assertEquals("black pieces", 15, Bitboards.count(b.getColorSet(Board.BLACK)));
+	}
+	
+	@Test
+	public void slidingAttacksTest(){
+		int a1 = Bitboards.square(0, 0);
+		int d4 = Bitboards.square(3, 3);
+		assertEquals("rook a1 empty board", 14, Bitboards.count(Bitboards.rookAttacks(a1, 0)));
+		assertEquals("bishop d4 empty board", 13, Bitboards.count(Bitboards.bishopAttacks(d4, 0)));
+		assertEquals("queen d4 empty board", 27, Bitboards.count(Bitboards.queenAttacks(d4, 0)));
+		
+		//a blocker on f6 cuts off g7 and h8, but f6 itself is still attacked
+		long blockers = Bitboards.bit(5, 5);
+		long attacks = Bitboards.bishopAttacks(d4, blockers);
+		assertTrue("f6 attacked", (attacks & Bitboards.bit(5, 5)) != 0);
+		assertFalse("g7 blocked", (attacks & Bitboards.bit(6, 6)) != 0);
+		assertEquals("bishop d4 blocked", 11, Bitboards.count(attacks));
+		
+		//pieces off the rook's lines don't matter
+		assertEquals("rook a1 ignores off-line pieces", Bitboards.rookAttacks(a1, 0), Bitboards.rookAttacks(a1, blockers));
+	}
+	
+	@Test
+	public void makeUnmakeTest(){
+		Board b = new Board();
+		Random r = new Random(1337);
+		for(int ply=0; ply<150; ply++){
+			List<Move> ml = b.generateMoves();
+			if(ml.isEmpty())
+				break;
+			Board before = new Board(b);
+			for(Move m : ml){
+				b.makeMove(m);
+				b.unmakeMove();
+				assertEquals("unmake " + m, before, b);
+				assertEquals("hash after unmake " + m, before.hashCode(), b.hashCode());
+				assertEquals("occupancy after unmake " + m, before.getOccupied(), b.getOccupied());
+				assertEquals("king after unmake " + m, before.getKingPosition(b.getTurn()), b.getKingPosition(b.getTurn()));
+			}
+			b.makeMove(ml.get(r.nextInt(ml.size())));
+		}
+	}
+	
+	@Test
+	public void generateCapturesTest(){
+		MoveList all = new MoveList(1), captures = new MoveList(1);
+		for(String fen : Perft.SUITE_FENS){
+			Board b = new Board(fen);
+			Random r = new Random(1337);
+			for(int ply=0; ply<60; ply++){
+				b.generateMoves(all, 0);
+				if(all.size(0) == 0)
+					break;
+				b.generateCaptures(captures, 0);
+				int expected = 0;
+				for(int i=0; i<all.size(0); i++){
+					int m = all.get(0, i);
+					byte promotion = Move.promotionOf(m);
+					boolean wanted = (promotion == Board.EMPTY) ? Move.isCapture(m) : promotion == Board.QUEEN;
+					if(wanted){
+						expected++;
+						assertTrue("capture generated " + new Move(m), captures.contains(0, m));
+					}
+				}
+				assertEquals("only captures generated", expected, captures.size(0));
+				b.makeMove(all.get(0, r.nextInt(all.size(0))));
+			}
+		}
+	}
+	
+	@Test
+	public void movePickerTest(){
+		MoveList all = new MoveList(1), quiets = new MoveList(1), captures = new MoveList(1);
+		MovePicker picker = new MovePicker();
+		picker.clearHistory();
+		Random r = new Random(1337);
+		int previous = Move.NONE; //a move from some other position, to stand in for an illegal suggestion
+		for(String fen : Perft.SUITE_FENS){
+			Board b = new Board(fen);
+			for(int ply=0; ply<60; ply++){
+				b.generateMoves(all, 0);
+				if(all.size(0) == 0)
+					break;
+				b.generateCaptures(captures, 0);
+				b.generateQuiets(quiets, 0);
+				assertEquals("captures and quiets cover every move", all.size(0), captures.size(0) + quiets.size(0));
+				
+				int suggested = all.get(0, r.nextInt(all.size(0)));
+				//some killers: one from another position, and one that's legal here
+				picker.recordCutoff(b, 3, previous, 1);
+				if(quiets.size(0) > 0)
+					picker.recordCutoff(b, 3, quiets.get(0, 0), 1);
+				picker.init(b, 3, suggested);
+				assertEquals("suggested move first", suggested, picker.next(b, 3));
+				int picked = 1;
+				for(int m = picker.next(b, 3); m != Move.NONE; m = picker.next(b, 3)){
+					assertTrue("picked a legal move", all.contains(0, m));
+					assertFalse("picked the suggested move twice", m == suggested);
+					picked++;
+				}
+				assertEquals("picked every move once", all.size(0), picked);
+				
+				previous = suggested;
+				b.makeMove(all.get(0, r.nextInt(all.size(0))));
+			}
+		}
+	}
+	
+	@Test
+	public void packedMoveTest(){
+		int e7 = Bitboards.square(4, 6), e8 = Bitboards.square(4, 7), d8 = Bitboards.square(3, 7);
+		int move = Move.pack(e7, d8, Board.KNIGHT, Move.CAPTURE);
+		assertEquals("from", e7, Move.fromSquare(move));
+		assertEquals("to", d8, Move.toSquare(move));
+		assertEquals("promotion", Board.KNIGHT, Move.promotionOf(move));
+		assertTrue("capture", Move.isCapture(move));
+		assertEquals("boxed knight promote", new Move(4,6,3,8,true), new Move(move));
+		assertEquals("boxed queen promote", new Move(4,6,4,7,false), new Move(Move.pack(e7, e8, Board.QUEEN, 0)));
+		assertFalse("rook promotes can't be boxed", Move.isBoxable(Move.pack(e7, e8, Board.ROOK, 0)));
+		
+		Board b = new Board();
+		MoveList ml = new MoveList();
+		b.generateMoves(ml, 3);
+		assertEquals("opening moves", 20, ml.size(3));
+		assertEquals("boxed opening moves", 20, b.generateMoves().size());
+		assertEquals("packed double push", b.packMove(new Move(4,1,4,3,false)),
+				Move.pack(Bitboards.square(4,1), Bitboards.square(4,3), Board.EMPTY, Move.DOUBLE_PUSH));
+		assertTrue("generated double push", ml.contains(3, b.packMove(new Move(4,1,4,3,false))));
+	}
+	
+	@Test
+	public void pinnedPieceTest(){
+		byte[][] squares = new byte[8][8];
+		squares[4][0] = Board.makeSquare(Board.WHITE, Board.KING);   //e1
+		squares[4][1] = Board.makeSquare(Board.WHITE, Board.BISHOP); //e2, pinned
+		squares[4][7] = Board.makeSquare(Board.BLACK, Board.ROOK);   //e8
+		squares[0][7] = Board.makeSquare(Board.BLACK, Board.KING);   //a8
+		Board b = new Board(squares, (byte) -1, Board.WHITE, new boolean[2], new boolean[2], new boolean[2],
+							new int[] {4,0}, new int[] {0,7});
+		assertTrue("pinned bishop can't move", b.generateSquareMoves(4, 1).isEmpty());
+		assertEquals("only king moves", 4, b.generateMoves().size()); //d1, d2, f1, f2
+	}
+	
+	@Test
+	public void enpassantDiscoveredCheckTest(){
+		byte[][] squares = new byte[8][8];
+		squares[0][4] = Board.makeSquare(Board.WHITE, Board.KING); //a5
+		squares[1][4] = Board.makeSquare(Board.WHITE, Board.PAWN); //b5
+		squares[2][4] = Board.makeSquare(Board.BLACK, Board.PAWN); //c5, just double pushed
+		squares[7][4] = Board.makeSquare(Board.BLACK, Board.ROOK); //h5
+		squares[7][7] = Board.makeSquare(Board.BLACK, Board.KING); //h8
+		Board b = new Board(squares, (byte) 2, Board.WHITE, new boolean[2], new boolean[2], new boolean[2],
+							new int[] {0,7}, new int[] {4,7});
+		//taking enpassant would clear both pawns off the fifth row and expose the king to the rook
+		assertFalse("enpassant exposes king", b.generateMoves().contains(new Move(1,4,2,5,true)));
+		assertTrue("push is fine", b.generateMoves().contains(new Move(1,4,1,5,false)));
+	}
+	
+	@Test
+	public void perftSuiteTest(){
+		Perft perft = new Perft(0, 1);
+		for(int i=0; i<Perft.SUITE_FENS.length; i++){
+			Board b = new Board(Perft.SUITE_FENS[i]);
+			for(int depth=1; depth<=3; depth++)
+				assertEquals("position " + (i+1) + " depth " + depth, Perft.SUITE_COUNTS[i][depth-1], perft.perft(b, depth));
+		}
+	}
+	
+	@Test
+	public void perftCacheAndThreadsTest(){
+		Board b = new Board(Perft.SUITE_FENS[1]);
+		assertEquals("cached", Perft.SUITE_COUNTS[1][3], new Perft(1, 1).perft(b, 4));
+		assertEquals("threaded", Perft.SUITE_COUNTS[1][3], new Perft(1, 2).perft(b, 4));
+	}
+	
+	@Test
+	public void transpositionTableTest(){
+		TranspositionTable tt = new TranspositionTable(1);
+		int move = Move.pack(12, 28, Board.EMPTY, Move.DOUBLE_PUSH);
+		tt.store(12345L, 7, -250, TranspositionTable.BOUND_LOWER, move);
+		long data = tt.probe(12345L);
+		assertEquals("depth", 7, TranspositionTable.depthOf(data));
+		assertEquals("score", -250, TranspositionTable.scoreOf(data));
+		assertEquals("bound", TranspositionTable.BOUND_LOWER, TranspositionTable.boundOf(data));
+		assertEquals("move", move, TranspositionTable.moveOf(data));
+		assertEquals("missing key", 0, tt.probe(54321L));
+		//a shallower search of another position in the same bucket doesn't push out the deeper one
+		long other = 12345L + (1L << 40);
+		tt.store(other, 3, 10, TranspositionTable.BOUND_EXACT, Move.NONE);
+		assertEquals("deep entry kept", 7, TranspositionTable.depthOf(tt.probe(12345L)));
+		assertEquals("shallow entry stored", 3, TranspositionTable.depthOf(tt.probe(other)));
+	}
+	
+	@Test
+	public void ttBoundsTest(){
+		//white should take the undefended queen
+		Board b = new Board("4k3/8/8/3q4/8/8/8/3QK3 w - - 0 1");
+		Move capture = new Move(3,0,3,4,true), quiet = new Move(3,0,0,3,false); //Qxd5, Qa4
+		Board afterCapture = b.afterMove(capture), afterQuiet = b.afterMove(quiet);
+		
+		//a deep upper bound far above any real score says nothing inside the window, so it mustn't end the search there.
+		//(taken as the score, it would make black look winning after the capture)
+		TranspositionTable tt = new TranspositionTable(1);
+		tt.store(afterCapture.getKey(), 10, 50000, TranspositionTable.BOUND_UPPER, Move.NONE);
+		assertEquals("upper bound outside the window ignored", capture,
+				new SearchEngine(new BasicEvaluator(), tt).search(b, new SearchLimits(3)));
+		
+		//likewise a lower bound far below any real score (taken as the score, it would make Qa4 look winning)
+		tt = new TranspositionTable(1);
+		tt.store(afterQuiet.getKey(), 10, -50000, TranspositionTable.BOUND_LOWER, Move.NONE);
+		assertEquals("lower bound outside the window ignored", capture,
+				new SearchEngine(new BasicEvaluator(), tt).search(b, new SearchLimits(3)));
+		
+		//while an exact score is always taken as is, here a lie that makes the quiet move look winning
+		tt = new TranspositionTable(1);
+		tt.store(afterQuiet.getKey(), 10, -50000, TranspositionTable.BOUND_EXACT, Move.NONE);
+		assertEquals("exact score used", quiet, new SearchEngine(new BasicEvaluator(), tt).search(b, new SearchLimits(3)));
+		
+		//the table's move is searched first, even when it's quiet and there are captures to try
+		MovePicker picker = new MovePicker();
+		picker.clearHistory();
+		picker.init(b, 0, b.packMove(quiet));
+		assertEquals("TT move first", b.packMove(quiet), picker.next(b, 0));
+		assertEquals("then the captures", b.packMove(capture), picker.next(b, 0));
+	}
+	
+	@Test
+	public void zobristKeyTest(){
+		Board b = new Board();
+		long start = b.getKey();
+		b.makeMove(new Move(4,1,4,3,false)); //e4
+		assertEquals("incremental key matches key built from scratch",
+				new Board("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1").getKey(), b.getKey());
+		assertFalse("enpassant column is part of the key",
+				new Board("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1").getKey() == b.getKey());
+		
+		b = new Board();
+		int[][] knightDance = { {6,0,5,2}, {6,7,5,5}, {5,2,6,0}, {5,5,6,7} };
+		for(int[] m : knightDance)
+			b.makeMove(new Move(m[0], m[1], m[2], m[3], false));
+		assertEquals("same position, same key", start, b.getKey());
+		
+		b = new Board("4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1");
+		long castling = b.getKey();
+		int[][] kingWalk = { {4,0,4,1}, {4,7,4,6}, {4,1,4,0}, {4,6,4,7} };
+		for(int[] m : kingWalk)
+			b.makeMove(new Move(m[0], m[1], m[2], m[3], false));
+		assertFalse("castling rights are part of the key", castling == b.getKey());
+		assertEquals("same as never having had the rights", new Board("4k3/8/8/8/8/8/8/R3K2R w - - 0 1").getKey(), b.getKey());
+	}
+	
+	@Test
+	public void incrementalEvaluatorTest(){
+		BasicEvaluator basic = new BasicEvaluator();
+		IncrementalEvaluator incremental = new IncrementalEvaluator();
+		Random r = new Random(42);
+		for(int game=0; game<20; game++){
+			Board b = new Board();
+			for(int ply=0; ply<100; ply++){
+				List<Move> moves = b.generateMoves();
+				if(moves.isEmpty())
+					break;
+				b.makeMove(moves.get(r.nextInt(moves.size())));
+				assertEquals("same score as adding it all up", basic.evaluate(b), incremental.evaluate(b));
+				if(r.nextInt(4) == 0){
+					b.unmakeMove();
+					assertEquals("sums restored by unmaking", basic.evaluate(b), incremental.evaluate(b));
+				}
+			}
+			Board copy = new Board(b);
+			assertEquals("copies keep the sums", incremental.evaluate(b), incremental.evaluate(copy));
+		}
+	}
+	
+	@Test
+	public void taperedEvaluatorTest(){
+		TaperedEvaluator e = new TaperedEvaluator();
+		assertEquals("starting position is even", 0, e.evaluate(new Board()));
+		assertEquals("all the pieces on", 24, TaperedEvaluator.phase(new Board()));
+		//the same position with the colors swapped and the board flipped scores the same for the side to move
+		assertEquals("symmetric", e.evaluate(new Board("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3")),
+				e.evaluate(new Board("rnbqkb1r/pppp1ppp/5n2/4p3/4P3/2N5/PPPP1PPP/R1BQKBNR b KQkq - 2 3")));
+		//with the queens on the king should stay home, without them it should come out
+		assertTrue("king safety in the midgame", e.evaluate(new Board("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQ1RK1 w kq - 0 1"))
+				> e.evaluate(new Board("rnbqkbnr/pppppppp/8/8/4K3/8/PPPPPPPP/RNBQ1R2 w kq - 0 1")));
+		
+		//the same kings and pawns, with queens and rooks added for both sides: the phase decides where the king belongs
+		Board midgameCenter = new Board("r2qk2r/pppp4/8/8/4K3/8/4PPPP/R2Q3R w - - 0 1");
+		Board midgameHome = new Board("r2qk2r/pppp4/8/8/8/8/4PPPP/R2Q2KR w - - 0 1");
+		Board endgameCenter = new Board("4k3/pppp4/8/8/4K3/8/4PPPP/8 w - - 0 1");
+		Board endgameHome = new Board("4k3/pppp4/8/8/8/8/4PPPP/6K1 w - - 0 1");
+		assertEquals("queens and rooks on", 16, TaperedEvaluator.phase(midgameCenter));
+		assertEquals("kings and pawns only", 0, TaperedEvaluator.phase(endgameCenter));
+		int midgameGain = e.evaluate(midgameCenter) - e.evaluate(midgameHome);
+		int endgameGain = e.evaluate(endgameCenter) - e.evaluate(endgameHome);
+		assertTrue("centralizing the king costs in the midgame, " + midgameGain, midgameGain < 0);
+		assertTrue("centralizing the king pays in the endgame, " + endgameGain, endgameGain > 0);
+		
+		//each evaluator switches the board to its own tables, so taking turns costs time, but never changes the scores
+		IncrementalEvaluator incremental = new IncrementalEvaluator();
+		int tapered = e.evaluate(midgameCenter);
+		assertEquals("incremental after tapered", new BasicEvaluator().evaluate(midgameCenter), incremental.evaluate(midgameCenter));
+		assertEquals("tapered after incremental", tapered, e.evaluate(midgameCenter));
+	}
+	
+	@Test
+	public void pawnHashTest(){
+		Board b = new Board();
+		long start = b.getPawnKey();
+		b.makeMove(new Move(6,0,5,2,false)); //Nf3
+		assertEquals("only pawns change the pawn key", start, b.getPawnKey());
+		b.makeMove(new Move(4,6,4,4,false)); //e5
+		assertEquals("incremental pawn key matches key built from scratch",
+				new Board("rnbqkbnr/pppp1ppp/8/4p3/8/5N2/PPPPPPPP/RNBQKB1R w KQkq e6 0 2").getPawnKey(), b.getPawnKey());
+		b.unmakeMove();
+		assertEquals("unmaking restores the pawn key", start, b.getPawnKey());
+		
+		PawnHashTable table = new PawnHashTable(1);
+		assertEquals("missing key", -1, table.probe(12345L));
+		int slot = table.store(12345L, 10, -20, 1L << 20, 0);
+		assertEquals("stored key", slot, table.probe(12345L));
+		assertEquals("midgame score", 10, table.getMidgame(slot));
+		assertEquals("endgame score", -20, table.getEndgame(slot));
+		assertEquals("passed pawns", 1L << 20, table.getPassedPawns(slot, Board.WHITE));
+		
+		TaperedEvaluator e = new TaperedEvaluator();
+		assertTrue("passed pawn", e.evaluate(new Board("4k3/8/8/3P4/8/8/8/4K3 w - - 0 1"))
+				> e.evaluate(new Board("4k3/3p4/8/3P4/8/8/8/4K3 w - - 0 1")) + 100);
+		assertTrue("doubled pawns", e.evaluate(new Board("4k3/8/8/8/8/3P4/3P4/4K3 w - - 0 1"))
+				< e.evaluate(new Board("4k3/8/8/8/8/2P5/3P4/4K3 w - - 0 1")));
+		new SearchEngine(e).search(new Board("r2q1rk1/pp2bppp/2n1pn2/3p4/3P4/2NBPN2/PP3PPP/R2Q1RK1 w - - 0 10"),
+				new SearchLimits(6));
+		assertTrue("pawn structures are shared by most positions", e.getPawnHashTable().getHitRatePermille() > 800);
+	}
+	
+	@Test
+	public void nullMoveTest(){
+		Board b = new Board("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+		Board before = new Board(b);
+		b.makeNullMove();
+		assertEquals("other player's turn", Board.WHITE, b.getTurn());
+		assertEquals("enpassant no longer possible", -1, b.getPreviousDoublePush());
+		assertEquals("key matches key built from scratch",
+				new Board("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 1").getKey(), b.getKey());
+		b.makeMove(new Move(3,1,3,3,false)); //d4
+		b.unmakeMove();
+		b.unmakeNullMove();
+		assertEquals("unmake null move", before, b);
+		assertEquals("key after unmake null move", before.getKey(), b.getKey());
+		assertEquals("enpassant restored", 4, b.getPreviousDoublePush());
+		
+		assertFalse("only pawns", new Board("4k3/pppp4/8/8/8/8/PPPP4/4K3 w - - 0 1").hasNonPawnMaterial(Board.WHITE));
+		assertTrue("a knight", new Board("4k3/pppp4/8/8/8/8/PPPP4/1N2K3 w - - 0 1").hasNonPawnMaterial(Board.WHITE));
+	}
+	
+	@Test
+	public void lazySMPTest(){
+		//white mates in two with a queen sacrifice, Qd8+ Bxd8 Re8#
+		Board b = new Board("r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0");
+		Move single = new ABTree(new BasicEvaluator()).getBestMoveFixed(b, 4);
+		LazySMPTree parallel = new LazySMPTree(new BasicEvaluator(), 3);
+		assertEquals("threads", 3, parallel.getThreadCount());
+		for(int i=0; i<3; i++){ //the helper threads make every run a little different
+			Move m = parallel.getBestMoveFixed(b, 4);
+			assertEquals("same move as one thread", single, m);
+		}
+		assertEquals("queen sacrifice", new Move(3,4,3,7,false), single);
+	}
+	
+	@Test
+	public void forkJoinTreeTest(){
+		ForkJoinTree parallel = new ForkJoinTree(new BasicEvaluator(), 3);
+		assertEquals("threads", 3, parallel.getThreadCount());
+		//should play the same move as a serial search, given a position with one clearly best move
+		Board b = new Board("r1bqkbnr/pppp1ppp/2n5/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4");
+		assertEquals("scholar's mate", new Move(7,4,5,6,false), parallel.getBestMoveFixed(b, 5));
+		//rook and bishop promotes can't be returned, so the top of the tree skips them, and finds the queen promote
+		b = new Board("4r3/5P1k/8/8/8/8/6K1/8 w - - 0 1");
+		assertEquals("queen promote taking the rook", new Move(5,6,4,7,true), parallel.getBestMoveFixed(b, 5));
+		parallel.shutdown();
+	}
+	
+	@Test
+	public void timedSearchTest(){
+		TimeManager time = new TimeManager(60000, 0, 0);
+		assertTrue("soft before hard", time.getSoftDeadline() < time.getHardDeadline());
+		assertTrue("one move's share of the clock", time.getHardDeadline() - System.nanoTime() < 30000 * 1000000L);
+		
+		//with a second left and nothing to go on, a search should take a small fraction of it
+		Board b = new Board("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+		SearchTree[] trees = { new ABTree(new BasicEvaluator()), new LazySMPTree(new BasicEvaluator(), 2),
+							   new ForkJoinTree(new BasicEvaluator(), 2) };
+		for(SearchTree tree : trees){
+			long start = System.nanoTime();
+			Move m = tree.getBestMoveTimed(b, 1000, 0, 0);
+			long millis = (System.nanoTime() - start) / 1000000;
+			assertNotNull("found a move", m);
+			assertTrue("legal move", b.isLegalMove(m));
+			assertTrue("within time, took " + millis + "ms", millis < 500);
+		}
+		((ForkJoinTree) trees[2]).shutdown();
+	}
+	
+	@Test
+	public void searchEngineTest(){
+		//white can win the queen with a skewer, Ra4+
+		Board b = new Board("K7/8/8/8/3k3q/8/8/R7 w - - 0 1");
+		SearchEngine engine = new SearchEngine(new BasicEvaluator());
+		final List<Integer> depths = new ArrayList<Integer>();
+		final List<Move> bests = new ArrayList<Move>();
+		engine.addListener(new SearchListener(){
+			public void bestMoveChanged(Move best, int depth){
+				bests.add(best);
+			}
+			public void iterationComplete(int depth, int score, List<Move> pv, long nodes, long millis){
+				depths.add(depth);
+				assertEquals("pv starts with the best move", bests.get(bests.size()-1), pv.get(0));
+			}
+		});
+		Move m = engine.search(b, new SearchLimits(5));
+		assertEquals("skewer", new Move(0,0,0,3,false), m);
+		assertEquals("every iteration reported", 4, depths.size());
+		assertEquals("last best move reported", m, bests.get(bests.size()-1));
+		
+		//a node limit stops the search soon after it's reached, but only once there's a move to return
+		engine.search(b, new SearchLimits(SearchLimits.MAX_DEPTH, 20000, null));
+		assertTrue("stopped near the limit, searched " + engine.getNodeCount(), engine.getNodeCount() < 25000);
+		engine.search(b, new SearchLimits(SearchLimits.MAX_DEPTH, 1, null));
+		assertTrue("finished the first iteration", engine.getNodeCount() > 1);
+		
+		//stopping before the search starts isn't lost, but there's still a move to play
+		engine = new SearchEngine(new BasicEvaluator());
+		engine.stop();
+		b = new Board("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+		m = engine.search(b, new SearchLimits(SearchLimits.MAX_DEPTH));
+		assertTrue("stopped early, searched " + engine.getNodeCount(), engine.getNodeCount() <= 1024);
+		assertNotNull("found a move anyway", m);
+		assertTrue("legal move", b.isLegalMove(m));
+		engine.clearStop();
+		engine.search(b, new SearchLimits(4));
+		assertTrue("searches again once cleared", engine.getNodeCount() > 1024);
+		assertNull("no moves in checkmate", engine.search(new Board("7k/6Q1/6K1/8/8/8/8/8 b - - 0 1"), new SearchLimits(3)));
+	}
+	
+	@Test
+	public void aspirationWindowTest(){
+		//scores that jump far outside the window between iterations: a pawn that can't be caught, found to queen at depth 4,
+		//and a pawn that looks won until the king is seen to come back for it
+		String[] fens = { "8/8/8/6P1/8/k7/8/K7 w - - 0 1", "4k3/8/8/8/1pP5/8/8/4K3 b - c3 0 1" };
+		for(String fen : fens){
+			final List<Integer> narrow = new ArrayList<Integer>(), full = new ArrayList<Integer>();
+			SearchEngine engine = new SearchEngine(new IncrementalEvaluator());
+			engine.addListener(scoreRecorder(narrow));
+			Move narrowMove = engine.search(new Board(fen), new SearchLimits(7));
+			engine = new SearchEngine(new IncrementalEvaluator());
+			engine.setAspirationWindows(false);
+			engine.addListener(scoreRecorder(full));
+			Move fullMove = engine.search(new Board(fen), new SearchLimits(7));
+			
+			assertTrue("score leaves the window " + narrow, Math.abs(narrow.get(narrow.size()-1) - narrow.get(0)) > 50);
+			assertEquals("same move as a full window", fullMove, narrowMove);
+			assertEquals("same scores as a full window", full, narrow);
+		}
+	}
+	
+	@Test
+	public void lateQuietMoveTest(){
+		//black's only move is Kxg7, after which e5, a quiet pawn move generated late, is white's only way to win a piece,
+		//forking the rook and knight. Every other move leaves white 250 or more behind.
+		//It's one ply down, so late move reductions and futility pruning get a chance to skip it.
+		Move fork = new Move(4,3,4,4,false);
+		for(int maxDepth=3; maxDepth<=6; maxDepth++){
+			final List<Integer> scores = new ArrayList<Integer>();
+			final List<Move> pv = new ArrayList<Move>();
+			SearchEngine engine = new SearchEngine(new IncrementalEvaluator());
+			engine.addListener(scoreRecorder(scores));
+			engine.addListener(new SearchListener(){
+				public void bestMoveChanged(Move best, int depth){}
+				public void iterationComplete(int depth, int score, List<Move> line, long nodes, long millis){
+					pv.clear();
+					pv.addAll(line);
+				}
+			});
+			engine.search(new Board("7k/pp4Pp/3r1n2/8/2BPP3/8/PP3PPP/6K1 b - - 0 1"), new SearchLimits(maxDepth));
+			assertEquals("fork found at depth " + maxDepth, fork, pv.get(1));
+			assertTrue("black loses the piece, scores " + scores, scores.get(scores.size()-1) < 0);
+		}
+		assertEquals("fork found from the top", fork, new SearchEngine(new IncrementalEvaluator())
+				.search(new Board("8/pp4kp/3r1n2/8/2BPP3/8/PP3PPP/6K1 w - - 0 1"), new SearchLimits(4)));
+	}
+	
+	@Test
+	public void depthOneTest(){
+		//a depth 1 search is one real iteration, which is enough to see a free queen
+		Board b = new Board("4k3/8/8/3q4/8/8/8/3QK3 w - - 0 1");
+		Move capture = new Move(3,0,3,4,true);
+		List<Integer> scores = new ArrayList<Integer>();
+		SearchEngine engine = new SearchEngine(new BasicEvaluator());
+		engine.addListener(scoreRecorder(scores));
+		assertEquals("takes the queen", capture, engine.search(b, new SearchLimits(1)));
+		assertEquals("one iteration reported", 1, scores.size());
+		assertTrue("searched it", engine.getNodeCount() > 1);
+		
+		ForkJoinTree forkJoin = new ForkJoinTree(new BasicEvaluator(), 2);
+		SearchTree[] trees = { new ABTree(new BasicEvaluator()), new LazySMPTree(new BasicEvaluator(), 2), forkJoin };
+		for(SearchTree tree : trees)
+			assertEquals("takes the queen", capture, tree.getBestMoveFixed(b, 1));
+		forkJoin.shutdown();
+	}
+	
+	/* A listener adding the score of every finished iteration to the given list. */
+	private static SearchListener scoreRecorder(final List<Integer> scores){
+		return new SearchListener(){
+			public void bestMoveChanged(Move best, int depth){}
+			public void iterationComplete(int depth, int score, List<Move> pv, long nodes, long millis){
+				scores.add(score);
+			}
+		};
+	}
+	
+	@Test
+	public void memoryBudgetTest(){
+		SearchEngine engine = new SearchEngine(new BasicEvaluator(), 8);
+		assertTrue("within budget, takes " + engine.getMaxHeapBytes(), engine.getMaxHeapBytes() <= 8 * 1024 * 1024);
+		assertTrue("most of it is table", engine.getTranspositionTable().getSizeBytes() >= 4 * 1024 * 1024);
+		String fen = "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/2N2N2/PPPP1PPP/R1BQK2R w KQkq - 6 5";
+		Board b = new Board(fen);
+		engine.search(b, new SearchLimits(4)); //so nothing allocated on first use is counted
+		
+		//searching only reuses what the engine allocated up front, so a search allocates little more than the Move it returns
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		engine.search(b, new SearchLimits(7));
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		assertTrue("searching allocated " + allocated + " bytes", allocated < 4096);
+		assertTrue("searched plenty of positions", engine.getNodeCount() > 10000);
+		assertEquals("the board searched on is left alone", new Board(fen), b);
+	}
+	
+	@Test
+	public void seeTest(){
+		//rook takes an undefended pawn
+		Board b = new Board("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1");
+		int e1 = Bitboards.square(4, 0), e5 = Bitboards.square(4, 4), d3 = Bitboards.square(3, 2);
+		assertEquals("free pawn", 100, b.see(Move.pack(e1, e5, Board.EMPTY, Move.CAPTURE)));
+		//knight takes a pawn defended by a knight and a bishop, with a queen and rook x-raying from behind
+		b = new Board("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1");
+		assertEquals("defended pawn", -200, b.see(Move.pack(d3, e5, Board.EMPTY, Move.CAPTURE)));
+		//a pawn defended by a rook: taking it with a rook loses the rook, unless a queen behind it can take back
+		int e2 = Bitboards.square(4, 1);
+		b = new Board("4r1k1/8/8/4p3/8/8/4R3/6K1 w - - 0 1");
+		assertEquals("rook for pawn", -400, b.see(Move.pack(e2, e5, Board.EMPTY, Move.CAPTURE)));
+		b = new Board("4r1k1/8/8/4p3/8/8/4R3/4Q1K1 w - - 0 1");
+		assertEquals("x-ray queen backs up the rook", 100, b.see(Move.pack(e2, e5, Board.EMPTY, Move.CAPTURE)));
+		//a quiet move onto a square a pawn guards just loses the piece
+		b = new Board("4k3/8/3p4/8/8/8/8/4RNK1 w - - 0 1");
+		int f1 = Bitboards.square(5, 0), e3 = Bitboards.square(4, 2);
+		assertEquals("safe square", 0, b.see(Move.pack(f1, e3, Board.EMPTY, 0)));
+		assertEquals("hanging the rook", -500, b.see(Move.pack(e1, e5, Board.EMPTY, 0)));
+	}
 
 }
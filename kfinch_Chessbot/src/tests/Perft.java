@@ -0,0 +1,274 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import chess_backend.Bitboards;
+import chess_backend.Board;
+import chess_backend.Coordinate;
+import chess_backend.Move;
+import chess_backend.MoveList;
+
+/**
+ * Perft.java
+ * Counts the leaf nodes of the full legal move tree to a fixed depth ("perft"), using
+ * Board.generateMoves(MoveList, int) and makeMove/unmakeMove. The counts for well known positions
+ * are published, so any mismatch means the move generator is broken, and the time taken is a
+ * direct measure of move generator speed.
+ *
+ * Usage:
+ *   Perft [-hash MB] [-threads N] [-depth D]          runs the reference suite up to depth D
+ *   Perft [-hash MB] [-threads N] divide D [FEN]      counts each root move separately
+ * Without -hash there is no perft cache. Without -threads everything runs on the calling thread.
+ * FEN defaults to the starting position.
+ */
+public class Perft {
+
+	/* The standard perft reference positions, with their published node counts by depth (starting at depth 1). */
+	public static final String[] SUITE_FENS = {
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+	};
+	public static final long[][] SUITE_COUNTS = {
+		{20, 400, 8902, 197281, 4865609, 119060324L},
+		{48, 2039, 97862, 4085603, 193690690L},
+		{14, 191, 2812, 43238, 674624, 11030083, 178633661L},
+		{6, 264, 9467, 422333, 15833292, 706045033L},
+		{44, 1486, 62379, 2103487, 89941194L},
+		{46, 2079, 89890, 3894594, 164075551L}
+	};
+
+	private static final int DEFAULT_SUITE_DEPTH = 5;
+
+	/* Optional perft cache. Two longs per entry: a check value and the count.
+	 * The check value is the position key (with the depth mixed in) xor'd with the count, so an entry that
+	 * two threads tore while writing fails its check rather than handing back a wrong count.
+	 */
+	private long[] cache;
+	private int cacheMask; //number of entries - 1
+	private int threads;
+
+	/**
+	 * @param hashMB Size of the perft cache in megabytes, or 0 for no cache.
+	 * @param threads Number of threads to split the root moves across, or 1 to stay on the calling thread.
+	 */
+	public Perft(int hashMB, int threads){
+		if(hashMB > 0){
+			int entries = Integer.highestOneBit((int) Math.min(1 << 30, hashMB * 1024L * 1024L / 16));
+			cache = new long[entries * 2];
+			cacheMask = entries - 1;
+		}
+		this.threads = Math.max(1, threads);
+	}
+
+	/** Returns the number of leaf nodes of the legal move tree from b at the given depth. b is left unchanged. */
+	public long perft(Board b, int depth){
+		if(depth <= 0)
+			return 1;
+		if(threads == 1)
+			return perftRecurse(new Board(b), depth, 0, new MoveList());
+		long total = 0;
+		for(long count : divideParallel(b, depth))
+			total += count;
+		return total;
+	}
+
+	/**
+	 * Counts the leaf nodes under each legal root move separately. b is left unchanged.
+	 * The counts are in the same order as the moves from b.generateMoves(MoveList, int).
+	 */
+	public long[] divide(Board b, int depth){
+		if(threads > 1)
+			return divideParallel(b, depth);
+		Board board = new Board(b);
+		MoveList moveList = new MoveList();
+		board.generateMoves(moveList, 0);
+		long[] counts = new long[moveList.size(0)];
+		for(int i=0; i<counts.length; i++){
+			board.makeMove(moveList.get(0, i));
+			counts[i] = perftRecurse(board, depth-1, 1, moveList);
+			board.unmakeMove();
+		}
+		return counts;
+	}
+
+	/* Splits the root moves across a fork/join pool, one task per root move,
+	 * each with its own copy of the board and its own MoveList.
+	 */
+	private long[] divideParallel(Board b, int depth){
+		MoveList moveList = new MoveList(1);
+		b.generateMoves(moveList, 0);
+		List<RootMoveTask> tasks = new ArrayList<RootMoveTask>();
+		for(int i=0; i<moveList.size(0); i++)
+			tasks.add(new RootMoveTask(b, moveList.get(0, i), depth-1));
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try{
+			long[] counts = new long[tasks.size()];
+			for(RootMoveTask task : tasks)
+				pool.execute(task);
+			for(int i=0; i<counts.length; i++)
+				counts[i] = tasks.get(i).join();
+			return counts;
+		} finally{
+			pool.shutdown();
+		}
+	}
+
+	private class RootMoveTask extends RecursiveTask<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		private Board board;
+		private int depth;
+
+		private RootMoveTask(Board b, int move, int depth){
+			board = new Board(b);
+			board.makeMove(move);
+			this.depth = depth;
+		}
+
+		protected Long compute(){
+			return perftRecurse(board, depth, 0, new MoveList());
+		}
+	}
+
+	/* Recursive helper for perft. Makes and unmakes moves on b in place.
+	 * At depth 1 the number of legal moves is the answer, so the last ply is never actually played out.
+	 */
+	private long perftRecurse(Board b, int depth, int ply, MoveList moveList){
+		if(depth == 0)
+			return 1;
+
+		long key = 0;
+		int index = 0;
+		if(cache != null && depth > 1){
+			key = positionKey(b, depth);
+			index = (int) (key & cacheMask) * 2;
+			long count = cache[index + 1];
+			if((cache[index] ^ count) == key)
+				return count;
+		}
+
+		b.generateMoves(moveList, ply);
+		int moveCount = moveList.size(ply);
+		if(depth == 1)
+			return moveCount;
+
+		long total = 0;
+		for(int i=0; i<moveCount; i++){
+			b.makeMove(moveList.get(ply, i));
+			total += perftRecurse(b, depth-1, ply+1, moveList);
+			b.unmakeMove();
+		}
+
+		if(cache != null){
+			cache[index] = key ^ total;
+			cache[index + 1] = total;
+		}
+		return total;
+	}
+
+	/* Cache helper. The board's Zobrist key, with the depth mixed in since the count depends on it too. */
+	private static long positionKey(Board b, int depth){
+		return b.getKey() ^ (depth * 0x9E3779B97F4A7C15L);
+	}
+
+	/**
+	 * Runs every suite position up to maxDepth (or as deep as it has published counts),
+	 * printing node counts, times and speeds. Returns true iff every count matched.
+	 */
+	public boolean runSuite(int maxDepth){
+		boolean allPassed = true;
+		long totalNodes = 0, totalNanos = 0;
+		for(int i=0; i<SUITE_FENS.length; i++){
+			System.out.println("Position " + (i+1) + ": " + SUITE_FENS[i]);
+			Board b = new Board(SUITE_FENS[i]);
+			for(int depth=1; depth<=Math.min(maxDepth, SUITE_COUNTS[i].length); depth++){
+				long begin = System.nanoTime();
+				long nodes = perft(b, depth);
+				long nanos = System.nanoTime() - begin;
+				boolean passed = (nodes == SUITE_COUNTS[i][depth-1]);
+				allPassed &= passed;
+				totalNodes += nodes;
+				totalNanos += nanos;
+				System.out.println("  depth " + depth + ": " + nodes + " nodes in " + (nanos/1000000) + " ms"
+						+ (passed ? "" : "   FAILED, expected " + SUITE_COUNTS[i][depth-1]));
+			}
+		}
+		System.out.println(totalNodes + " nodes in " + (totalNanos/1000000) + " ms ("
+				+ (long) (totalNodes / (totalNanos / 1e9)) + " nodes/sec)");
+		System.out.println(allPassed ? "All counts match." : "SOME COUNTS DID NOT MATCH!");
+		return allPassed;
+	}
+
+	/** Prints each root move's node count, then the total. */
+	public void printDivide(Board b, int depth){
+		MoveList moveList = new MoveList(1);
+		b.generateMoves(moveList, 0);
+		long begin = System.nanoTime();
+		long[] counts = divide(b, depth);
+		long nanos = System.nanoTime() - begin;
+		long total = 0;
+		for(int i=0; i<counts.length; i++){
+			System.out.println(moveToString(moveList.get(0, i)) + ": " + counts[i]);
+			total += counts[i];
+		}
+		System.out.println("Moves: " + counts.length);
+		System.out.println("Nodes: " + total + " in " + (nanos/1000000) + " ms");
+	}
+
+	/* Long algebraic notation for a packed move, ex. "e7e8q", as most other engines' divide output uses it. */
+	private static String moveToString(int move){
+		int from = Move.fromSquare(move);
+		int to = Move.toSquare(move);
+		String result = Board.coordToNotation(new Coordinate(Bitboards.fileOf(from), Bitboards.rankOf(from)))
+					  + Board.coordToNotation(new Coordinate(Bitboards.fileOf(to), Bitboards.rankOf(to)));
+		switch(Move.promotionOf(move)){
+		case Board.QUEEN:  result += "q"; break;
+		case Board.ROOK:   result += "r"; break;
+		case Board.BISHOP: result += "b"; break;
+		case Board.KNIGHT: result += "n"; break;
+		}
+		return result;
+	}
+
+	public static void main(String[] args){
+		int hashMB = 0, threads = 1, depth = DEFAULT_SUITE_DEPTH;
+		int i = 0;
+		for(; i<args.length && args[i].startsWith("-"); i+=2){
+			if(args[i].equals("-hash"))
+				hashMB = Integer.parseInt(args[i+1]);
+			else if(args[i].equals("-threads"))
+				threads = Integer.parseInt(args[i+1]);
+			else if(args[i].equals("-depth"))
+				depth = Integer.parseInt(args[i+1]);
+			else{
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		Perft perft = new Perft(hashMB, threads);
+		if(i < args.length && args[i].equals("divide")){
+			depth = Integer.parseInt(args[i+1]);
+			String fen = SUITE_FENS[0];
+			if(i+2 < args.length){
+				StringBuilder sb = new StringBuilder();
+				for(int j=i+2; j<args.length; j++)
+					sb.append(args[j]).append(' ');
+				fen = sb.toString();
+			}
+			perft.printDivide(new Board(fen), depth);
+		}
+		else if(!perft.runSuite(depth))
+			System.exit(1);
+	}
+
+}